@@ -0,0 +1,87 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.closures.ClosureCompiler;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.vm.VM;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same small programs on each engine, warmed up: where an engine spends its time
+ * once the JIT is done with it.
+ *
+ *  - fib: recursive fib(25), calls and number arithmetic.
+ *  - globals: a while loop over global variables, which it reads and assigns.
+ *  - calls: a loop calling a two-argument function, assigning the result to a global.
+ *
+ * The program is parsed and resolved once; every invocation runs it on a fresh engine,
+ * as Lox.runFile would. No Optimizer, so the calls stay calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final String FIB = """
+            fun fib(n) {
+                if (n < 2) return n;
+                return fib(n - 2) + fib(n - 1);
+            }
+            var result = fib(25);
+            """;
+
+    private static final String GLOBALS = """
+            var i = 0;
+            var sum = 0;
+            while (i < 300000) {
+                sum = sum + i * 2;
+                i = i + 1;
+            }
+            """;
+
+    private static final String CALLS = """
+            fun add(a, b) { return a + b; }
+            var acc = 0;
+            for (var i = 0; i < 300000; i = i + 1) {
+                acc = add(acc, i);
+            }
+            """;
+
+    @Param({"tree", "closure", "vm"})
+    public String engine;
+
+    @Param({"fib", "globals", "calls"})
+    public String program;
+
+    private List<BaseStmt> resolved;
+
+    @Setup
+    public void setup() throws Lexer.LexerError, RuntimeError {
+        String source = switch (program) {
+            case "fib" -> FIB;
+            case "globals" -> GLOBALS;
+            default -> CALLS;
+        };
+        resolved = new Parser().parse(new Lexer().scanToBuffer(source)).statements;
+        new Resolver().resolve(resolved);
+    }
+
+    @Benchmark
+    public Object run() throws RuntimeError {
+        return switch (engine) {
+            case "vm" -> new VM().interpret(resolved);
+            case "closure" -> new ClosureCompiler().interpret(resolved);
+            default -> new Evaluator().evaluate(resolved);
+        };
+    }
+}
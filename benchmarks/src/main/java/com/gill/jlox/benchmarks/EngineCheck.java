@@ -0,0 +1,290 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.closures.ClosureCompiler;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Optimizer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.vm.VM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Differential check of the execution engines: a program must print the same thing - output
+ * and runtime errors, in order - on the tree-walker, the VM and the closure compiler, each
+ * with the default pipeline, without the Optimizer (--no-opt) and with --lazy-parse.
+ *
+ * Usage: EngineCheck [--seed=N] [--programs=N] [dir...]
+ *
+ * Inputs are every .lox file under the given directories (default lox_scripts and
+ * lox_benchmarks) and N random programs (default 300), which always terminate. The random
+ * programs go after what the resolver, the optimizer and the engines' local storage get
+ * wrong most easily: loops and blocks declaring locals, shadowing, variables declared after
+ * a function that reads them, closures that escape through globals, recursion, and early
+ * returns.
+ * Exits with 1 on the first difference. EngineCheckTest runs the same check in the build.
+ */
+public class EngineCheck {
+
+    private static final String[] ENGINES = {"tree", "vm", "closure"};
+
+    public static void main(String[] args) throws IOException {
+        long seed = 42;
+        int programs = 300;
+        List<Path> dirs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--programs=")) {
+                programs = Integer.parseInt(arg.substring("--programs=".length()));
+            } else {
+                dirs.add(Paths.get(arg));
+            }
+        }
+        if (dirs.isEmpty()) {
+            dirs.add(Paths.get("lox_scripts"));
+            dirs.add(Paths.get("lox_benchmarks"));
+        }
+
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Path dir : dirs) {
+            for (Path file : LexerCheck.loxFiles(dir)) {
+                sources.put(file.toString(), Files.readString(file, StandardCharsets.UTF_8));
+            }
+        }
+        Random rnd = new Random(seed);
+        for (int i = 0; i < programs; i++) {
+            sources.put("random program #" + i + " (seed " + seed + ")", randomProgram(rnd));
+        }
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            String mismatch = check(source.getKey(), source.getValue());
+            if (mismatch != null) {
+                System.out.println(mismatch);
+                System.out.println(source.getValue());
+                System.exit(1);
+            }
+        }
+        System.out.println("OK: " + sources.size() + " programs run identically in " + ENGINES.length * 3 + " configurations");
+    }
+
+    /**
+     * Runs source on every engine with and without the Optimizer and lazy parsing. Returns
+     * null if all print what the tree-walker prints by default, otherwise the first difference.
+     */
+    static String check(String name, String source) {
+        String expected = run("tree", true, false, source);
+        for (String engine : ENGINES) {
+            for (int flags = 0; flags < 3; flags++) {
+                boolean optimize = flags != 1;
+                boolean lazyParse = flags == 2;
+                String actual = run(engine, optimize, lazyParse, source);
+                if (!expected.equals(actual)) {
+                    String config = "--engine=" + engine + (optimize ? "" : " --no-opt") + (lazyParse ? " --lazy-parse" : "");
+                    return compare(name, config, expected, actual);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Everything the program printed, to System.out and System.err, running it through
+     * the same pipeline as Lox.runFile.
+     */
+    static String run(String engine, boolean optimize, boolean lazyParse, String source) {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream capture = new PrintStream(printed, true, StandardCharsets.UTF_8);
+        System.setOut(capture);
+        System.setErr(capture);
+        try {
+            Parser parser = new Parser();
+            parser.setLazy(lazyParse);
+            List<BaseStmt> statements = parser.parse(new Lexer().scanToBuffer(source)).statements;
+            if (optimize) {
+                Optimizer optimizer = new Optimizer();
+                optimizer.setInlining(true);
+                statements = optimizer.optimize(statements);
+            }
+            new Resolver().resolve(statements);
+            switch (engine) {
+                case "vm" -> new VM().interpret(statements);
+                case "closure" -> new ClosureCompiler().interpret(statements);
+                default -> new Evaluator().evaluate(statements);
+            }
+        } catch (Lexer.LexerError | Parser.ParseError | RuntimeError e) {
+            System.err.println(e.getMessage());
+        } catch (RuntimeException | StackOverflowError e) {
+            // An engine bug, not a Lox error: still a difference to report.
+            System.err.println("crashed: " + e);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        return printed.toString(StandardCharsets.UTF_8);
+    }
+
+    static String compare(String name, String config, String expected, String actual) {
+        String[] want = expected.split("\n", -1);
+        String[] got = actual.split("\n", -1);
+        int i = 0;
+        while (i < want.length && i < got.length && want[i].equals(got[i])) {
+            i++;
+        }
+        return "MISMATCH in " + name + ": " + config + " differs from --engine=tree at line " + (i + 1) + "\n"
+                + "  tree: " + (i < want.length ? want[i] : "<end>") + "\n"
+                + "  " + config + ": " + (i < got.length ? got[i] : "<end>");
+    }
+
+    static String randomProgram(Random rnd) {
+        return new ProgramGenerator(rnd).program();
+    }
+
+    /**
+     * Builds one random program out of a few fixed helper functions and some p0..pN(a, b)
+     * with random bodies, each called once, followed by random top-level statements.
+     * Every statement reads and writes the same few names, so most of them are shadowed
+     * somewhere. A for loop's body never assigns its loop variable, which is what keeps
+     * every program finite.
+     */
+    private static final class ProgramGenerator {
+        private static final String[] NAMES = {"a", "b", "i", "x", "y"};
+
+        private final Random rnd;
+        private final Set<String> loopVariables = new HashSet<>();
+        private int depth;
+
+        ProgramGenerator(Random rnd) {
+            this.rnd = rnd;
+        }
+
+        String program() {
+            List<String> program = new ArrayList<>(List.of(
+                    "fun idf(f) { return f; }",
+                    "var a = 1; var b = 2; var i = 3; var x = 4; var y = 5; var gs = 0; var last = nil;",
+                    "fun f0(n) { for (var j = 0; j < 3; j = j + 1) { var t = n + j; n = t; } return n; }",
+                    "fun f1(n) { var s = 0; while (s < 2) { var u = s; { var v = u + n; s = s + 1; n = v; } } return n; }",
+                    "fun r0(n) { var acc = 0; for (var j = 0; j < n; j = j + 1) { var m = j; "
+                            + "if (n > 0) { var rec = r0(n - 1); acc = acc + rec + m; } } return acc; }",
+                    "fun r1(n) { while (n > 0) { var keep = n; var sub = r1(n - 1); print keep + sub; n = n - 1; } return 0; }"));
+            int functions = between(2, 5);
+            for (int p = 0; p < functions; p++) {
+                program.add("fun p" + p + "(a, b) { " + String.join(" ", statements(between(2, 8), true)) + " return a; }");
+                program.add("print p" + p + "(" + between(0, 5) + ", " + between(0, 5) + ");");
+            }
+            program.addAll(statements(between(3, 10), false));
+            return String.join("\n", program) + "\n";
+        }
+
+        private List<String> statements(int count, boolean inFunction) {
+            List<String> out = new ArrayList<>();
+            depth++;
+            for (int s = 0; s < count; s++) {
+                out.add(statement(inFunction));
+            }
+            depth--;
+            return out;
+        }
+
+        private String statement(boolean inFunction) {
+            double c = rnd.nextDouble();
+            if (c < 0.22) {
+                return "var " + name() + " = " + expression() + ";";
+            } else if (c < 0.34) {
+                return "print " + expression() + ";";
+            } else if (c < 0.44) {
+                String target = assignable();
+                return target == null ? "print " + name() + ";" : target + " = " + expression() + ";";
+            } else if (c < 0.52 && depth < 5) {
+                return "{ " + String.join(" ", statements(between(0, 4), inFunction)) + " }";
+            } else if (c < 0.62 && depth < 5) {
+                String v = name();
+                String exit = rnd.nextDouble() < 0.3 ? "if (" + name() + " > 2) break; " : "";
+                boolean added = loopVariables.add(v);
+                String body = String.join(" ", statements(between(0, 5), inFunction));
+                if (added) {
+                    loopVariables.remove(v);
+                }
+                return "for (var " + v + " = 0; " + v + " < " + between(0, 4) + "; " + v + " = " + v + " + 1) { "
+                        + exit + body + " }";
+            } else if (c < 0.67 && depth < 5) {
+                return "{ var w = 0; while (w < " + between(0, 3) + ") { w = w + 1; "
+                        + String.join(" ", statements(between(0, 4), inFunction)) + " } }";
+            } else if (c < 0.72 && depth < 5) {
+                String[] bodies = {"print k;", "{ var z = k; print z; }", "if (k == 1) { var q = k * 10; print q; }"};
+                return "for (var k = 0; k < 3; k = k + 1) " + bodies[rnd.nextInt(bodies.length)];
+            } else if (c < 0.82 && depth < 5) {
+                String v = name();
+                return "fun g" + depth + "() { print " + v + "; return " + v + "; } gs = gs + 1; last = g" + depth + ";";
+            } else if (c < 0.85) {
+                return "var h = idf(fun () { return " + name() + "; }); last = h; print h();";
+            } else if (c < 0.88) {
+                return "if (last != nil) print last();";
+            } else if (c < 0.91) {
+                return "print " + name() + ";";
+            } else if (c < 0.95 && inFunction) {
+                return "if (" + name() + " > 3) return " + expression() + ";";
+            } else if (c < 0.965 && depth < 4) {
+                // A function reading a name that its own block declares only after the first call.
+                String v = name();
+                return "{ fun late" + depth + "() { for (var m = 0; m < 2; m = m + 1) { var t = m; print " + v
+                        + "; var " + v + " = t; print " + v + "; } } late" + depth + "(); var " + v + " = "
+                        + between(10, 99) + "; late" + depth + "(); }";
+            } else if (c < 0.98 && depth < 4) {
+                return "{ var rr = r" + between(0, 1) + "(2); print rr; }";
+            }
+            String target = assignable();
+            return target == null ? "print " + name() + ";" : "print " + target + "++;";
+        }
+
+        private String expression() {
+            double c = rnd.nextDouble();
+            if (c < 0.4) {
+                return name();
+            } else if (c < 0.6) {
+                return String.valueOf(between(0, 5));
+            } else if (c < 0.7) {
+                return name() + " + " + between(1, 3);
+            } else if (c < 0.8) {
+                return "f" + between(0, 1) + "(" + name() + ")";
+            }
+            return "(" + name() + " * 2)";
+        }
+
+        private String name() {
+            return NAMES[rnd.nextInt(NAMES.length)];
+        }
+
+        // A name that is not the variable of an enclosing for loop, or null if they all are.
+        private String assignable() {
+            List<String> names = new ArrayList<>();
+            for (String name : NAMES) {
+                if (!loopVariables.contains(name)) {
+                    names.add(name);
+                }
+            }
+            return names.isEmpty() ? null : names.get(rnd.nextInt(names.size()));
+        }
+
+        private int between(int min, int max) {
+            return min + rnd.nextInt(max - min + 1);
+        }
+    }
+}
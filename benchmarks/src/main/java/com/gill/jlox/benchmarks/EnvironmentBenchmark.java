@@ -0,0 +1,68 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Variable lookup for a name defined `depth` scopes up from where it is read:
+ * by name through map-backed scopes, by name through slot-backed scopes, and
+ * by (depth, slot) the way resolved references do it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+
+    private static final int SLOTS_PER_SCOPE = 4;
+
+    @Param({"0", "1", "4", "16"})
+    public int depth;
+
+    private final Token name = new Token("target", TokenType.IDENTIFIER, null, 1);
+    private Environment mapChain;
+    private Environment slotChain;
+
+    @Setup
+    public void setup() {
+        Environment mapRoot = new Environment();
+        mapRoot.define("target", 42.0);
+        mapChain = mapRoot;
+        for (int i = 0; i < depth; i++) {
+            mapChain = new Environment(mapChain);
+            mapChain.define("local" + i, (double) i);
+        }
+
+        Environment slotRoot = new Environment(null, SLOTS_PER_SCOPE);
+        slotRoot.defineAt(SLOTS_PER_SCOPE - 1, "target", 42.0);
+        slotChain = slotRoot;
+        for (int i = 0; i < depth; i++) {
+            slotChain = new Environment(slotChain, SLOTS_PER_SCOPE);
+            for (int slot = 0; slot < SLOTS_PER_SCOPE; slot++) {
+                slotChain.defineAt(slot, "local" + i + "_" + slot, (double) slot);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object mapByName() throws RuntimeError {
+        return mapChain.getEnvByToken(name);
+    }
+
+    @Benchmark
+    public Object slotsByName() throws RuntimeError {
+        return slotChain.getEnvByToken(name);
+    }
+
+    @Benchmark
+    public Object slotsResolved() {
+        return slotChain.getAt(depth, SLOTS_PER_SCOPE - 1);
+    }
+}
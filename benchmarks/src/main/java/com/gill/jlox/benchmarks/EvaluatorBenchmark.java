@@ -0,0 +1,74 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.RuntimeError;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end runs of the lox_scripts/ programs on the tree-walking Evaluator.
+ *
+ * `run` measures the whole pipeline (scan, parse, resolve, evaluate) the way
+ * Lox.runFile does it; `evaluate` re-runs an already resolved tree in a fresh
+ * Evaluator, to separate front-end cost from execution cost.
+ * Program output is thrown away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    @Param({
+            "break_test", "closures", "comma_strings", "fibonacci", "lambda_proper",
+            "leaky_closures", "lotta_lambdas", "more_scope_fun", "scope", "scope_and_fun"
+    })
+    public String script;
+
+    private String source;
+    private List<BaseStmt> resolved;
+    private PrintStream realOut;
+    private PrintStream realErr;
+
+    @Setup
+    public void setup() throws IOException, Lexer.LexerError, RuntimeError {
+        source = Sources.script(script);
+        resolved = frontEnd(source);
+        realOut = System.out;
+        realErr = System.err;
+        System.setOut(Sources.nullStream());
+        System.setErr(Sources.nullStream());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(realOut);
+        System.setErr(realErr);
+    }
+
+    private static List<BaseStmt> frontEnd(String source) throws Lexer.LexerError, RuntimeError {
+        List<BaseStmt> statements = new Parser().parse(new Lexer().scanToBuffer(source)).statements;
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    @Benchmark
+    public Object run() throws Lexer.LexerError, RuntimeError {
+        return new Evaluator().evaluate(frontEnd(source));
+    }
+
+    @Benchmark
+    public Object evaluate() throws RuntimeError {
+        return new Evaluator().evaluate(resolved);
+    }
+}
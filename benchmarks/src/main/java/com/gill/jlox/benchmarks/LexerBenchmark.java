@@ -0,0 +1,60 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.operations.ByteLexer;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexer throughput on generated sources of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int functions;
+
+    private String source;
+    // Off-heap UTF-8 copy of the source, standing in for a memory-mapped script file.
+    private ByteBuffer sourceBytes;
+
+    @Setup
+    public void setup() {
+        source = Sources.manyFunctions(functions);
+        byte[] utf8 = source.getBytes(StandardCharsets.UTF_8);
+        sourceBytes = ByteBuffer.allocateDirect(utf8.length).put(utf8).flip();
+    }
+
+    @Benchmark
+    public TokenBuffer scanToBuffer() throws Lexer.LexerError {
+        return new Lexer().scanToBuffer(source);
+    }
+
+    @Benchmark
+    public TokenBuffer scanBytes() throws Lexer.LexerError {
+        return new ByteLexer().scan(sourceBytes);
+    }
+
+    // ByteLexer without its word-at-a-time skip loops.
+    @Benchmark
+    public TokenBuffer scanBytesScalar() throws Lexer.LexerError {
+        return new ByteLexer(false).scan(sourceBytes);
+    }
+
+    // The List<Token> form, which materializes a Token for every token.
+    @Benchmark
+    public List<Token> scan() throws Lexer.LexerError {
+        return new Lexer().scan(source);
+    }
+}
@@ -0,0 +1,197 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.operations.ByteLexer;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.ParallelLexer;
+import com.gill.jlox.tokens.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Differential check of the lexer front ends: every one must produce the same token stream
+ * (types, lexemes, lines) - or fail with the same error - as the plain String Lexer.
+ * Compared are ByteLexer byte-at-a-time and word-at-a-time, and ParallelLexer over
+ * both Strings and bytes.
+ *
+ * Usage: LexerCheck [--seed=N] [--random=N] [dir...]
+ *
+ * Inputs are every .lox file under the given directories (default lox_scripts and
+ * lox_benchmarks), generated sources, and N random token soups (default 2000), which
+ * mix keywords, operators, odd whitespace, comments and non-ASCII strings.
+ * Exits with 1 on the first difference. LexerCheckTest runs the same checks in the build.
+ */
+public class LexerCheck {
+
+    private static final String[] PIECES = {
+            "var", "fun", "for", "while", "if", "else", "return", "print", "and", "or", "nil", "true",
+            "varx", "fun_", "_a1", "identifier_longer_than_eight", "x", "Ab9",
+            "0", "12", "3.25", "7.", "1234567890123",
+            "(", ")", "{", "}", ",", ".", ";", "-", "--", "+", "++", "*", "/", "%", "!", "!=",
+            "=", "==", "<", "<=", ">", ">=", "&&", "||", "&", "|",
+            " ", "  ", "        ", "\t", "\r\n", "\n", "\n\n    ",
+            "// comment\n", "//\n", "// \"quoted\" // twice é\n",
+            "\"\"", "\"short\"", "\"a string well over eight bytes\"", "\"multi\nline\nstring\"",
+            "\"unicode: é ü 日本語 🙂\"", "\"// not a comment\"",
+    };
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        int random = 2000;
+        List<Path> dirs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--random=")) {
+                random = Integer.parseInt(arg.substring("--random=".length()));
+            } else {
+                dirs.add(Paths.get(arg));
+            }
+        }
+        if (dirs.isEmpty()) {
+            dirs.add(Paths.get("lox_scripts"));
+            dirs.add(Paths.get("lox_benchmarks"));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Path dir : dirs) {
+            for (Path file : loxFiles(dir)) {
+                sources.put(file.toString(), Files.readString(file, StandardCharsets.UTF_8));
+            }
+        }
+        sources.putAll(generatedSources());
+        Random rnd = new Random(seed);
+        for (int i = 0; i < random; i++) {
+            sources.put("random #" + i + " (seed " + seed + ")", randomSource(rnd));
+        }
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            String mismatch = check(source.getKey(), source.getValue(), pool);
+            if (mismatch != null) {
+                System.out.println(mismatch);
+                System.exit(1);
+            }
+        }
+        pool.shutdown();
+        System.out.println("OK: " + sources.size() + " sources lex identically");
+    }
+
+    static List<Path> loxFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Generated sources by name, among them some at least ParallelLexer.MIN_PARALLEL_SIZE
+     * long, with and without lex errors.
+     */
+    static Map<String, String> generatedSources() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("manyFunctions(10)", Sources.manyFunctions(10));
+        // Big enough for ParallelLexer to really split it.
+        String big = Sources.manyFunctions(8000);
+        sources.put("manyFunctions(8000)", big);
+        sources.put("deepExpression(500)", Sources.deepExpression(500));
+        // The same big source with errors in it: near the start, in the middle, in two
+        // chunks at once (the first one must win) and an unterminated string at the end.
+        int middle = big.indexOf('\n', big.length() / 2) + 1;
+        sources.put("manyFunctions(8000), error at start", "#" + big);
+        sources.put("manyFunctions(8000), error in middle", big.substring(0, middle) + "#" + big.substring(middle));
+        sources.put("manyFunctions(8000), two errors", big.substring(0, middle) + "#" + big.substring(middle) + "\n#\n");
+        sources.put("manyFunctions(8000), unterminated string", big + "\"never closed");
+        return sources;
+    }
+
+    /**
+     * A random token soup; about one in twenty has something the lexer has to reject.
+     */
+    static String randomSource(Random rnd) {
+        int pieces = 1 + rnd.nextInt(200);
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p < pieces; p++) {
+            sb.append(PIECES[rnd.nextInt(PIECES.length)]);
+            if (rnd.nextInt(4) == 0) {
+                sb.append(' ');
+            }
+        }
+        if (rnd.nextInt(20) == 0) {
+            int at = rnd.nextInt(sb.length() + 1);
+            if (at < sb.length() && Character.isLowSurrogate(sb.charAt(at))) {
+                // Not between the two halves of an emoji.
+                at--;
+            }
+            sb.insert(at, rnd.nextBoolean() ? "#" : "\"unterminated");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lexes source with every front end. Returns null if all agree with Lexer, otherwise
+     * a description of the first difference.
+     */
+    static String check(String name, String source, ForkJoinPool pool) {
+        byte[] utf8 = source.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(utf8.length).put(utf8).flip();
+
+        String expected = describe(() -> new Lexer().scanToBuffer(source));
+        String mismatch = compare(name, "ByteLexer (bytes)", expected, describe(() -> new ByteLexer(false).scan(bytes)));
+        if (mismatch == null) {
+            mismatch = compare(name, "ByteLexer (words)", expected, describe(() -> new ByteLexer(true).scan(bytes)));
+        }
+        if (mismatch == null) {
+            mismatch = compare(name, "ParallelLexer (String)", expected, describe(() -> new ParallelLexer(pool).scan(source)));
+        }
+        if (mismatch == null) {
+            mismatch = compare(name, "ParallelLexer (bytes)", expected, describe(() -> new ParallelLexer(pool).scan(bytes)));
+        }
+        return mismatch;
+    }
+
+    private interface Scan {
+        TokenBuffer run() throws Lexer.LexerError;
+    }
+
+    // One line per token, or the error.
+    private static String describe(Scan scan) {
+        TokenBuffer tokens;
+        try {
+            tokens = scan.run();
+        } catch (Lexer.LexerError e) {
+            return "LexerError: " + e.getMessage();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            sb.append(tokens.line(i)).append(' ').append(tokens.type(i)).append(' ')
+                    .append(tokens.lexeme(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String compare(String name, String lexer, String expected, String actual) {
+        if (expected.equals(actual)) {
+            return null;
+        }
+        String[] want = expected.split("\n", -1);
+        String[] got = actual.split("\n", -1);
+        int i = 0;
+        while (i < want.length && i < got.length && want[i].equals(got[i])) {
+            i++;
+        }
+        return "MISMATCH in " + name + ": " + lexer + " differs from Lexer at token " + i + "\n"
+                + "  Lexer:  " + (i < want.length ? want[i] : "<end>") + "\n"
+                + "  " + lexer + ": " + (i < got.length ? got[i] : "<end>");
+    }
+}
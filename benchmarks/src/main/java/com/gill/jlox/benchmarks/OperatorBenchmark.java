@@ -0,0 +1,54 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.RuntimeError;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary and Unary nodes on the tree-walking Evaluator, where they specialize on the
+ * operand types they see. `mixed` uses most operators and both numbers and strings in
+ * one loop, so every kind of specialization is live at once; `numbers` only adds and
+ * compares, the best case for a single specialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperatorBenchmark {
+
+    @Param({"numbers", "mixed"})
+    public String workload;
+
+    private List<BaseStmt> resolved;
+
+    @Setup
+    public void setup() throws Lexer.LexerError, RuntimeError {
+        String body = switch (workload) {
+            case "numbers" -> "total = total + i;\n"
+                    + "if (i < 500) total = total + 1;\n";
+            default -> "var a = i * 2 - 1;\n"
+                    + "if (a > 10 and a <= 3000) total = total + a;\n"
+                    + "if (!(i == 7)) total = total - -1;\n"
+                    + "if (i >= 990) s = s + \"x\";\n";
+        };
+        String source = "var s = \"\";\n"
+                + "var total = 0;\n"
+                + "for (var i = 0; i < 1000; i++) {\n" + body + "}\n";
+        resolved = new Parser().parse(new Lexer().scanToBuffer(source)).statements;
+        new Resolver().resolve(resolved);
+    }
+
+    @Benchmark
+    public Object evaluate() throws RuntimeError {
+        return new Evaluator().evaluate(resolved);
+    }
+}
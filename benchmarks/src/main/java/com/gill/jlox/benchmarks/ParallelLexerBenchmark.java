@@ -0,0 +1,45 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.ParallelLexer;
+import com.gill.jlox.tokens.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParallelLexer on a ~11MB generated source with 1, 2, 4, ... threads: the scaling curve.
+ * Thread counts above the machine's core count only show the cost of oversubscription.
+ * With one thread, ParallelLexer is the plain sequential Lexer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelLexerBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private String source;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        source = Sources.manyFunctions(40000);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public TokenBuffer scan() throws Lexer.LexerError {
+        return new ParallelLexer(pool).scan(source);
+    }
+}
@@ -0,0 +1,66 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.SyntaxTree;
+import com.gill.jlox.tokens.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser.parse on pre-scanned token streams: many small functions (statements, blocks,
+ * loops), the same with lazily parsed bodies, and a single deeply nested expression
+ * (the precedence machinery).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Functions {
+        @Param({"100", "1000", "10000"})
+        public int functions;
+
+        TokenBuffer tokens;
+
+        @Setup
+        public void setup() throws Lexer.LexerError {
+            tokens = new Lexer().scanToBuffer(Sources.manyFunctions(functions));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeepExpression {
+        @Param({"50", "500"})
+        public int expressionDepth;
+
+        TokenBuffer tokens;
+
+        @Setup
+        public void setup() throws Lexer.LexerError {
+            tokens = new Lexer().scanToBuffer(Sources.deepExpression(expressionDepth));
+        }
+    }
+
+    @Benchmark
+    public SyntaxTree manyFunctions(Functions state) {
+        return new Parser().parse(state.tokens);
+    }
+
+    // --lazy-parse: function bodies are only brace-matched.
+    @Benchmark
+    public SyntaxTree manyFunctionsLazy(Functions state) {
+        Parser parser = new Parser();
+        parser.setLazy(true);
+        return parser.parse(state.tokens);
+    }
+
+    @Benchmark
+    public SyntaxTree deepExpression(DeepExpression state) {
+        return new Parser().parse(state.tokens);
+    }
+}
@@ -0,0 +1,70 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.closures.ClosureCompiler;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.vm.VM;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One non-tail recursive call chain `depth` calls deep, on each engine.
+ *
+ * The tree-walking Evaluator and the closure compiler recurse on the Java stack for every
+ * Lox call, the VM keeps its frames in arrays on the heap. To compare them at depths a
+ * default thread can't reach, the program runs on a thread with a 1GB stack.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecursionBenchmark {
+
+    private static final long STACK_SIZE = 1L << 30;
+
+    @Param({"tree", "closure", "vm"})
+    public String engine;
+
+    @Param({"100", "10000", "100000"})
+    public int depth;
+
+    private List<BaseStmt> resolved;
+    private ExecutorService deepStack;
+
+    @Setup
+    public void setup() throws Lexer.LexerError, RuntimeError {
+        String source = "fun depth(n) {\n"
+                + "    if (n == 0) return 0;\n"
+                + "    return 1 + depth(n - 1);\n"
+                + "}\n"
+                + "depth(" + depth + ");\n";
+        resolved = new Parser().parse(new Lexer().scanToBuffer(source)).statements;
+        new Resolver().resolve(resolved);
+        deepStack = Executors.newSingleThreadExecutor(task -> new Thread(null, task, "lox-deep-stack", STACK_SIZE));
+    }
+
+    @TearDown
+    public void tearDown() {
+        deepStack.shutdown();
+    }
+
+    @Benchmark
+    public Object recurse() throws InterruptedException, ExecutionException {
+        return deepStack.submit(() -> switch (engine) {
+            case "vm" -> new VM().interpret(resolved);
+            case "closure" -> new ClosureCompiler().interpret(resolved);
+            default -> new Evaluator().evaluate(resolved);
+        }).get();
+    }
+}
@@ -0,0 +1,66 @@
+package com.gill.jlox.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lox programs for the benchmarks: generated ones of a given size, and the
+ * lox_scripts/ samples which the build copies onto the classpath.
+ */
+final class Sources {
+
+    private Sources() {
+    }
+
+    /**
+     * `count` small functions, each with a loop, a conditional and some arithmetic -
+     * a fair mix of every token kind the Lexer knows about.
+     */
+    static String manyFunctions(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("// function number ").append(i).append('\n');
+            sb.append("fun f").append(i).append("(a, b) {\n");
+            sb.append("    var total = 0;\n");
+            sb.append("    for (var i = 0; i < a; i = i + 1) {\n");
+            sb.append("        if (i % 2 == 0 and b != nil) total = total + i * 1.5;\n");
+            sb.append("        else total = total - (b / 2);\n");
+            sb.append("    }\n");
+            sb.append("    print \"f").append(i).append(" done\";\n");
+            sb.append("    return total >= 10 or !false;\n");
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A single expression statement nested `depth` levels deep: (1 + (2 * (3 - ...))).
+     */
+    static String deepExpression(int depth) {
+        StringBuilder sb = new StringBuilder();
+        String[] operators = {" + ", " * ", " - ", " / "};
+        for (int i = 0; i < depth; i++) {
+            sb.append('(').append(i + 1).append(operators[i % operators.length]);
+        }
+        sb.append('1');
+        sb.append(")".repeat(depth));
+        sb.append(";\n");
+        return sb.toString();
+    }
+
+    static String script(String name) throws IOException {
+        try (InputStream in = Sources.class.getResourceAsStream("/lox_scripts/" + name + ".lox")) {
+            if (in == null) {
+                throw new IOException("No such script on the classpath: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static PrintStream nullStream() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,216 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.closures.ClosureCompiler;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Optimizer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.vm.VM;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Runs the lox_benchmarks/ workloads end to end on one engine and reports, per workload,
+ * runs per second, how much it allocates and how long the collector ran.
+ * The numbers can be saved as a baseline and compared against on a later run.
+ *
+ * Usage: WorkloadRunner [--engine=tree|vm|closure] [--no-opt] [--warmup=N] [--iterations=N]
+ *                       [--dir=lox_benchmarks] [--baseline=FILE] [--save=FILE] [workload...]
+ *
+ * Each run is the whole pipeline Lox.runFile goes through (scan, parse, optimize, resolve,
+ * execute) on a fresh engine, with the program's output thrown away. --no-opt skips the
+ * Optimizer, like it does for Lox.
+ */
+public class WorkloadRunner {
+
+    record Result(double opsPerSec, double bytesPerOp, double allocMbPerSec, double gcMs) {
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        String engine = "tree";
+        boolean optimize = true;
+        int warmup = 10;
+        int iterations = 20;
+        Path dir = Paths.get("lox_benchmarks");
+        Path baseline = null;
+        Path save = null;
+        List<String> names = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = value(arg);
+            } else if (arg.equals("--no-opt")) {
+                optimize = false;
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--dir=")) {
+                dir = Paths.get(value(arg));
+            } else if (arg.startsWith("--baseline=")) {
+                baseline = Paths.get(value(arg));
+            } else if (arg.startsWith("--save=")) {
+                save = Paths.get(value(arg));
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else {
+                names.add(arg);
+            }
+        }
+        if (!(engine.equals("tree") || engine.equals("vm") || engine.equals("closure")) || iterations < 1) {
+            usage();
+        }
+        if (names.isEmpty()) {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(path -> path.getFileName().toString())
+                        .filter(name -> name.endsWith(".lox"))
+                        .map(name -> name.substring(0, name.length() - ".lox".length()))
+                        .sorted()
+                        .forEach(names::add);
+            }
+        }
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String name : names) {
+            String source = Files.readString(dir.resolve(name + ".lox"), StandardCharsets.UTF_8);
+            results.put(name, measure(engine, optimize, source, warmup, iterations));
+        }
+
+        Map<String, Result> previous = baseline != null ? load(baseline) : Map.of();
+        System.out.printf(Locale.ROOT, "engine=%s%s warmup=%d iterations=%d%n",
+                engine, optimize ? "" : " (no-opt)", warmup, iterations);
+        System.out.printf(Locale.ROOT, "%-16s %12s %14s %12s %10s%s%n",
+                "workload", "ops/s", "alloc B/op", "alloc MB/s", "GC ms",
+                baseline != null ? "   vs baseline (ops/s, alloc B/op)" : "");
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result r = entry.getValue();
+            String diff = "";
+            Result before = previous.get(entry.getKey());
+            if (before != null) {
+                diff = String.format(Locale.ROOT, "   %+7.1f%%  %+7.1f%%",
+                        change(before.opsPerSec(), r.opsPerSec()), change(before.bytesPerOp(), r.bytesPerOp()));
+            } else if (baseline != null) {
+                diff = "   (not in baseline)";
+            }
+            System.out.printf(Locale.ROOT, "%-16s %12.2f %14.0f %12.1f %10.1f%s%n",
+                    entry.getKey(), r.opsPerSec(), r.bytesPerOp(), r.allocMbPerSec(), r.gcMs(), diff);
+        }
+        if (save != null) {
+            store(save, engine, results);
+            System.out.println("Saved results to " + save);
+        }
+    }
+
+    private static Result measure(String engine, boolean optimize, String source, int warmup, int iterations)
+            throws Exception {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(Sources.nullStream());
+        System.setErr(Sources.nullStream());
+        try {
+            for (int i = 0; i < warmup; i++) {
+                runOnce(engine, optimize, source);
+            }
+            long gcBefore = gcMillis();
+            long allocBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                runOnce(engine, optimize, source);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocBefore;
+            long gc = gcMillis() - gcBefore;
+            double seconds = elapsed / 1e9;
+            return new Result(iterations / seconds, (double) allocated / iterations,
+                    allocated / seconds / (1024 * 1024), gc);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    private static Object runOnce(String engine, boolean optimize, String source)
+            throws Lexer.LexerError, RuntimeError {
+        List<BaseStmt> statements = new Parser().parse(new Lexer().scanToBuffer(source)).statements;
+        if (optimize) {
+            Optimizer optimizer = new Optimizer();
+            optimizer.setInlining(true);
+            statements = optimizer.optimize(statements);
+        }
+        new Resolver().resolve(statements);
+        return switch (engine) {
+            case "vm" -> new VM().interpret(statements);
+            case "closure" -> new ClosureCompiler().interpret(statements);
+            default -> new Evaluator().evaluate(statements);
+        };
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static double change(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+
+    /*
+     * Baseline files are plain text, one workload per line:
+     *   name <tab> ops/s <tab> alloc B/op <tab> alloc MB/s <tab> GC ms
+     * Lines starting with '#' are comments.
+     */
+
+    private static void store(Path file, String engine, Map<String, Result> results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# engine=" + engine);
+        lines.add("# workload\tops/s\talloc B/op\talloc MB/s\tGC ms");
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result r = entry.getValue();
+            lines.add(String.format(Locale.ROOT, "%s\t%.4f\t%.1f\t%.2f\t%.1f",
+                    entry.getKey(), r.opsPerSec(), r.bytesPerOp(), r.allocMbPerSec(), r.gcMs()));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Result> load(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            results.put(fields[0], new Result(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                    Double.parseDouble(fields[3]), Double.parseDouble(fields[4])));
+        }
+        return results;
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: WorkloadRunner [--engine=tree|vm|closure] [--no-opt] [--warmup=N] [--iterations=N] "
+                + "[--dir=lox_benchmarks] [--baseline=FILE] [--save=FILE] [workload...]");
+        System.exit(64);
+    }
+}
@@ -0,0 +1,43 @@
+package com.gill.jlox.benchmarks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Runs EngineCheck's differential check as part of the build.
+ */
+class EngineCheckTest {
+
+    @Test
+    void sampleScripts() throws IOException {
+        // Surefire runs in the module directory.
+        for (Path file : LexerCheck.loxFiles(Paths.get("../lox_scripts"))) {
+            assertNull(EngineCheck.check(file.toString(), Files.readString(file, StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    void randomPrograms() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            assertNull(EngineCheck.check("random program #" + i, EngineCheck.randomProgram(rnd)));
+        }
+    }
+
+    // check() only compares engines with each other; make sure it does see a difference.
+    @Test
+    void reportsFirstDifference() {
+        String mismatch = EngineCheck.compare("p", "--engine=vm", "1\n2\n3\n", "1\n2\n4\n");
+        assertEquals("MISMATCH in p: --engine=vm differs from --engine=tree at line 3\n"
+                + "  tree: 3\n  --engine=vm: 4", mismatch);
+    }
+}
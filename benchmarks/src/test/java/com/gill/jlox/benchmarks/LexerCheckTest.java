@@ -0,0 +1,85 @@
+package com.gill.jlox.benchmarks;
+
+import com.gill.jlox.operations.ByteLexer;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.ParallelLexer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs LexerCheck's differential check as part of the build. The pool has four threads
+ * whatever the machine, so ParallelLexer really splits the large sources.
+ */
+class LexerCheckTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void sampleScripts() throws IOException {
+        // Surefire runs in the module directory.
+        for (String dir : new String[]{"../lox_scripts", "../lox_benchmarks"}) {
+            for (Path file : LexerCheck.loxFiles(Paths.get(dir))) {
+                assertNull(LexerCheck.check(file.toString(), Files.readString(file, StandardCharsets.UTF_8), pool));
+            }
+        }
+    }
+
+    @Test
+    void generatedSources() {
+        for (Map.Entry<String, String> source : LexerCheck.generatedSources().entrySet()) {
+            assertNull(LexerCheck.check(source.getKey(), source.getValue(), pool));
+        }
+    }
+
+    @Test
+    void randomSources() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            assertNull(LexerCheck.check("random #" + i, LexerCheck.randomSource(rnd), pool));
+        }
+    }
+
+    // check() only compares front ends with each other; this makes sure a large source
+    // with an error really fails, with the error the sequential Lexer reports.
+    @Test
+    void largeSourceWithErrorReportsFirstError() {
+        String big = Sources.manyFunctions(8000);
+        assertTrue(big.length() >= ParallelLexer.MIN_PARALLEL_SIZE);
+        String source = big + "#\n" + big + "#\n";
+        byte[] utf8 = source.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(utf8.length).put(utf8).flip();
+
+        Lexer.LexerError expected = assertThrows(Lexer.LexerError.class, () -> new Lexer().scanToBuffer(source));
+        Lexer.LexerError fromString = assertThrows(Lexer.LexerError.class, () -> new ParallelLexer(pool).scan(source));
+        Lexer.LexerError fromBytes = assertThrows(Lexer.LexerError.class, () -> new ParallelLexer(pool).scan(bytes));
+        assertEquals(expected.getMessage(), fromString.getMessage());
+        assertEquals(expected.getMessage(), fromBytes.getMessage());
+        assertEquals(expected.getMessage(), assertThrows(Lexer.LexerError.class, () -> new ByteLexer().scan(bytes)).getMessage());
+    }
+}
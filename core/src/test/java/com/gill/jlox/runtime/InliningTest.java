@@ -0,0 +1,95 @@
+package com.gill.jlox.runtime;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.ast.statements.BlockStmt;
+import com.gill.jlox.ast.statements.PrintStmt;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Optimizer;
+import com.gill.jlox.operations.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Calls to functions with a body of several statements are spliced into the calling
+ * statement, and the program prints what it printed with the calls.
+ */
+class InliningTest {
+
+    private static final String HELPERS = """
+            var count = 0;
+            fun clamp(v, lo, hi) { if (v < lo) return lo; if (v > hi) return hi; return v; }
+            fun tick(n) { count = count + n; }
+            fun sum(n) { var s = 0; var i = 0; while (i < n) { s = s + i; i = i + 1; } return s; }
+            fun early(a) { var t = a * 2; if (t > 9) { print "big"; return 9; } else { t = t + 1; } print t; return t; }
+            fun none(a) { if (a) return; print "none"; }
+            fun shadow(a) { var a = a + 1; { var a = a * 10; print a; } return a; }
+            """;
+
+    @Test
+    void splicedBodiesRunAsCalls() throws Exception {
+        String source = HELPERS + """
+                print clamp(7, 0, 5);
+                tick(3);
+                tick(4);
+                print count;
+                print early(2);
+                print early(7);
+                print none(true);
+                print shadow(1);
+                {
+                    var x = -3;
+                    var r = clamp(x, 0, 2);
+                    print r;
+                    for (var i = 0; i < 3; i = i + 1) {
+                        var s = sum(i + 2);
+                        print s;
+                    }
+                }
+                """;
+        String expected = "5.0\n7.0\n5.0\n5.0\nbig\n9.0\nnull\n20.0\n2.0\n0.0\n1.0\n3.0\n6.0\n";
+        for (String engine : Scripts.ENGINES) {
+            assertEquals(expected, Scripts.run(engine, source), engine);
+        }
+        // Each spliced top-level call comes in a block of its own.
+        List<BaseStmt> program = optimize(source);
+        assertInstanceOf(BlockStmt.class, program.get(7));
+    }
+
+    @Test
+    void errorInSplicedBodyEndsOnlyItsStatement() {
+        String source = """
+                fun bad(a) { var t = a + 1; return t + "x"; }
+                print bad(1);
+                print "after";
+                """;
+        for (String engine : Scripts.ENGINES) {
+            assertEquals("Operands must be two numbers or two strings.\nafter\n", Scripts.run(engine, source), engine);
+        }
+    }
+
+    @Test
+    void recursionAndClosuresStayCalls() throws Exception {
+        String source = """
+                fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                fun adder(a) { fun add(b) { return a + b; } return add; }
+                print fib(10);
+                print adder(1);
+                """;
+        List<BaseStmt> program = optimize(source);
+        assertInstanceOf(PrintStmt.class, program.get(2));
+        assertInstanceOf(PrintStmt.class, program.get(3));
+        for (String engine : Scripts.ENGINES) {
+            assertEquals("55.0\n<fn:add>\n", Scripts.run(engine, source), engine);
+        }
+    }
+
+    private static List<BaseStmt> optimize(String source) throws Exception {
+        Optimizer optimizer = new Optimizer();
+        optimizer.setInlining(true);
+        return optimizer.optimize(new Parser().parse(new Lexer().scanToBuffer(source)).statements);
+    }
+}
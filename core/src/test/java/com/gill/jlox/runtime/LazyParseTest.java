@@ -0,0 +1,61 @@
+package com.gill.jlox.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * --lazy-parse leaves function bodies alone until their first call, on every engine: a
+ * syntax error in a body only turns up when the function is called.
+ */
+class LazyParseTest {
+
+    private static final String BROKEN = """
+            fun ok(n) { return n + 1; }
+            fun broken() { var = ; }
+            print ok(1);
+            """;
+
+    @Test
+    void uncalledBrokenFunctionIsNeverParsed() {
+        for (String engine : Scripts.ENGINES) {
+            assertEquals("2.0\n", Scripts.run(engine, BROKEN, true), engine);
+        }
+    }
+
+    @Test
+    void brokenFunctionFailsWhenCalled() {
+        String source = BROKEN + """
+                print "before";
+                broken();
+                print "after";
+                broken();
+                """;
+        String expected = Scripts.run("tree", source, true);
+        assertTrue(expected.startsWith("2.0\nbefore\n"), expected);
+        assertTrue(expected.contains("Expected variable name here!\nafter\n"), expected);
+        for (String engine : Scripts.ENGINES) {
+            assertEquals(expected, Scripts.run(engine, source, true), engine);
+        }
+    }
+
+    // Every closure made from one declaration shares its deferred body.
+    @Test
+    void closuresOfOneDeclaration() {
+        String source = """
+                fun counter(start) {
+                    fun next() { start = start + 1; return start; }
+                    return next;
+                }
+                var a = counter(0);
+                var b = counter(10);
+                print b();
+                print a();
+                print b();
+                """;
+        for (String engine : Scripts.ENGINES) {
+            assertEquals("11.0\n1.0\n12.0\n", Scripts.run(engine, source, true), engine);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.gill.jlox.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OperatorsTest {
+
+    @Test
+    void addNumbersOrStrings() throws RuntimeError {
+        assertEquals(3.0, Operators.add(1.0, 2.0));
+        assertEquals("ab", Operators.add("a", "b"));
+    }
+
+    @Test
+    void addMixedOperandsIsAnError() {
+        Object[][] mixed = {{"x", 1.0}, {1.0, "x"}, {"x", null}, {true, "x"}, {1.0, false}};
+        for (Object[] operands : mixed) {
+            RuntimeError error = assertThrows(RuntimeError.class, () -> Operators.add(operands[0], operands[1]));
+            assertEquals("Operands must be two numbers or two strings.", error.getMessage());
+        }
+    }
+
+    // Every engine has its own fast paths for `+`; none of them may fall back to nil.
+    @Test
+    void addMixedOperandsOnEveryEngine() {
+        String source = """
+                var s = "x";
+                var n = 1;
+                print s + n;
+                print n + s;
+                print "x" + 1;
+                print s + s;
+                print n + n;
+                """;
+        String error = "Operands must be two numbers or two strings.\n";
+        for (String engine : Scripts.ENGINES) {
+            assertEquals(error + error + error + "xx\n2.0\n", Scripts.run(engine, source), engine);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.gill.jlox.runtime;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.closures.ClosureCompiler;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Optimizer;
+import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.vm.VM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Runs a Lox source through the same pipeline as Lox.runFile (parse, optimize, resolve,
+ * execute) on one engine and returns what it printed, errors included, in order.
+ */
+final class Scripts {
+
+    static final String[] ENGINES = {"tree", "vm", "closure"};
+
+    private Scripts() {
+    }
+
+    static String run(String engine, String source) {
+        return run(engine, source, false);
+    }
+
+    static String run(String engine, String source, boolean lazyParse) {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream capture = new PrintStream(printed, true, StandardCharsets.UTF_8);
+        System.setOut(capture);
+        System.setErr(capture);
+        try {
+            Parser parser = new Parser();
+            parser.setLazy(lazyParse);
+            List<BaseStmt> statements = parser.parse(new Lexer().scanToBuffer(source)).statements;
+            Optimizer optimizer = new Optimizer();
+            optimizer.setInlining(true);
+            statements = optimizer.optimize(statements);
+            new Resolver().resolve(statements);
+            switch (engine) {
+                case "vm" -> new VM().interpret(statements);
+                case "closure" -> new ClosureCompiler().interpret(statements);
+                default -> new Evaluator().evaluate(statements);
+            }
+        } catch (Lexer.LexerError | Parser.ParseError | RuntimeError e) {
+            System.err.println(e.getMessage());
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        return printed.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,50 @@
+package com.gill.jlox.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The tree-walker's Binary and Unary nodes specialize on the first operands they see;
+ * later operands of another type must still give the generic result. Each loop below
+ * runs one node over operands whose types change from one iteration to the next, and
+ * ends in the error a failed guard has to report (which also ends the loop).
+ */
+class SpecializationTest {
+
+    @Test
+    void binaryNodeSeesNumbersThenStrings() {
+        String source = """
+                var x = 1;
+                var y = 2;
+                for (var i = 0; i < 5; i++) {
+                    print x + y;
+                    if (i == 0) { x = "a"; y = "b"; }
+                    if (i == 1) { x = 3; y = 4; }
+                    if (i == 2) { x = "c"; y = "d"; }
+                    if (i == 3) { x = "e"; y = 5; }
+                }
+                x = 1;
+                for (var i = 0; i < 3; i++) {
+                    print x < 2;
+                    if (i == 1) x = "a";
+                }
+                """;
+        assertEquals("3.0\nab\n7.0\ncd\nOperands must be two numbers or two strings.\n"
+                + "true\ntrue\nOperands must be numbers.\n", Scripts.run("tree", source));
+    }
+
+    @Test
+    void unaryNodeSeesNumbersThenOthers() {
+        String source = """
+                var x = 1;
+                for (var i = 0; i < 3; i++) {
+                    print !x;
+                    print -x;
+                    if (i == 0) x = 2;
+                    if (i == 1) x = nil;
+                }
+                """;
+        assertEquals("false\n-1.0\nfalse\n-2.0\ntrue\nOperand must be a number.\n", Scripts.run("tree", source));
+    }
+}
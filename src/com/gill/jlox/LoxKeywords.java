@@ -7,6 +7,8 @@ import java.util.Map;
 
 public class LoxKeywords {
     public static final Map<String, TokenType> keywords;
+    // How each keyword is spelled, by TokenType ordinal.
+    private static final String[] spellings = new String[TokenType.values().length];
     static {
         keywords = new HashMap<>();
         keywords.put("and",    TokenType.AND);
@@ -26,5 +28,40 @@ public class LoxKeywords {
         keywords.put("var",    TokenType.VAR);
         keywords.put("while",  TokenType.WHILE);
         keywords.put("break",  TokenType.BREAK);
+        keywords.forEach((spelling, type) -> spellings[type.ordinal()] = spelling);
+    }
+
+    /**
+     * The one keyword a word of this length, starting with these two characters, could be
+     * (or null). The caller still compares the word with spelling(keyword).
+     * No two keywords share length and first character except for/fun and this/true,
+     * which the second character tells apart. Keep in sync with the map above.
+     */
+    public static TokenType candidate(int length, int first, int second) {
+        switch (first) {
+            case 'a': return length == 3 ? TokenType.AND : null;
+            case 'b': return length == 5 ? TokenType.BREAK : null;
+            case 'c': return length == 5 ? TokenType.CLASS : null;
+            case 'e': return length == 4 ? TokenType.ELSE : null;
+            case 'f':
+                if (length == 3) return second == 'o' ? TokenType.FOR : second == 'u' ? TokenType.FUN : null;
+                return length == 5 ? TokenType.FALSE : null;
+            case 'i': return length == 2 ? TokenType.IF : null;
+            case 'n': return length == 3 ? TokenType.NIL : null;
+            case 'o': return length == 2 ? TokenType.OR : null;
+            case 'p': return length == 5 ? TokenType.PRINT : null;
+            case 'r': return length == 6 ? TokenType.RETURN : null;
+            case 's': return length == 5 ? TokenType.SUPER : null;
+            case 't':
+                if (length != 4) return null;
+                return second == 'h' ? TokenType.THIS : second == 'r' ? TokenType.TRUE : null;
+            case 'v': return length == 3 ? TokenType.VAR : null;
+            case 'w': return length == 5 ? TokenType.WHILE : null;
+            default: return null;
+        }
+    }
+
+    public static String spelling(TokenType keyword) {
+        return spellings[keyword.ordinal()];
     }
 }
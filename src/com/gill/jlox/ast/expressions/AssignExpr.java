@@ -1,5 +1,6 @@
 package com.gill.jlox.ast.expressions;
 
+import com.gill.jlox.operations.Resolver;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
 
@@ -7,6 +8,10 @@ public class AssignExpr<T> implements BaseExpr<T> {
     public Token name;
     public BaseExpr value;
 
+    // Resolved location of the assignment target (same scheme as VarExpr).
+    public int depth = Resolver.DYNAMIC;
+    public int slot = -1;
+
     public AssignExpr(Token name, BaseExpr value) {
         this.name = name;
         this.value = value;
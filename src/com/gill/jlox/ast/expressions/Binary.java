@@ -7,6 +7,8 @@ public class Binary<T> implements BaseExpr<T> {
     public BaseExpr<T> left;
     public BaseExpr<T> right;
     public Token operator;
+    // Rewritten in place as the node observes its operand types.
+    public BinarySpecialization specialization = BinarySpecialization.UNINITIALIZED;
 
     public Binary(BaseExpr left, Token operator, BaseExpr right) {
         this.left = left;
@@ -15,11 +17,7 @@ public class Binary<T> implements BaseExpr<T> {
     }
 
     @Override
-    public T accept(BaseVisitor<T> visitor) {
-        try {
-            return visitor.visitBinary(this);
-        } catch (RuntimeError e) {
-            throw new RuntimeException(e);
-        }
+    public T accept(BaseVisitor<T> visitor) throws RuntimeError {
+        return visitor.visitBinary(this);
     }
 }
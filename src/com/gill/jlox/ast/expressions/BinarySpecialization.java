@@ -0,0 +1,82 @@
+package com.gill.jlox.ast.expressions;
+
+import com.gill.jlox.runtime.Operators;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.TokenType;
+
+/**
+ * Self-specializing behaviour of a Binary node (Truffle-style node rewriting).
+ *
+ * Every Binary starts out UNINITIALIZED. The first evaluation looks at the operand
+ * types it actually got and rewrites the node to a specialized state, eg. NUMBER_ADD
+ * for `a + b` on two numbers. Each state guards its assumption; when the guard fails
+ * the node rewrites itself to GENERIC, which handles every case through Operators, and
+ * stays there so a polymorphic site doesn't keep flip-flopping.
+ *
+ * The states are a plain enum that execute() switches on, not objects with a virtual
+ * execute(): a program that mixes operators would turn that one call site megamorphic
+ * and undo the specialization. A switch stays a jump table however many states are live.
+ */
+public enum BinarySpecialization {
+    UNINITIALIZED,
+    GENERIC,
+    NUMBER_ADD,
+    NUMBER_SUBTRACT,
+    NUMBER_MULTIPLY,
+    NUMBER_LESS,
+    NUMBER_LESS_EQUAL,
+    NUMBER_GREATER,
+    NUMBER_GREATER_EQUAL,
+    NUMBER_EQUAL,
+    STRING_CONCAT;
+
+    public static Object execute(Binary site, Object left, Object right) throws RuntimeError {
+        if (left instanceof Double l && right instanceof Double r) {
+            switch (site.specialization) {
+                case NUMBER_ADD: return l + r;
+                case NUMBER_SUBTRACT: return l - r;
+                case NUMBER_MULTIPLY: return l * r;
+                case NUMBER_LESS: return l < r;
+                case NUMBER_LESS_EQUAL: return l <= r;
+                case NUMBER_GREATER: return l > r;
+                case NUMBER_GREATER_EQUAL: return l >= r;
+                case NUMBER_EQUAL: return l.doubleValue() == r.doubleValue();
+                default: break;
+            }
+        } else if (site.specialization == STRING_CONCAT && left instanceof String l && right instanceof String r) {
+            return l + r;
+        }
+        return rewrite(site, left, right);
+    }
+
+    // Kept out of execute() so that stays small enough to be inlined into its caller.
+    private static Object rewrite(Binary site, Object left, Object right) throws RuntimeError {
+        if (site.specialization == UNINITIALIZED) {
+            site.specialization = specialize(site.operator.tokenType, left, right);
+            return execute(site, left, right);
+        }
+        // GENERIC already, or a specialization whose guard failed: deoptimize for good.
+        site.specialization = GENERIC;
+        return Operators.binary(site.operator, left, right);
+    }
+
+    static BinarySpecialization specialize(TokenType operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            switch (operator) {
+                case PLUS: return NUMBER_ADD;
+                case MINUS: return NUMBER_SUBTRACT;
+                case STAR: return NUMBER_MULTIPLY;
+                case LESS: return NUMBER_LESS;
+                case LESS_EQUAL: return NUMBER_LESS_EQUAL;
+                case GREATER: return NUMBER_GREATER;
+                case GREATER_EQUAL: return NUMBER_GREATER_EQUAL;
+                case EQUAL_EQUAL: return NUMBER_EQUAL;
+                default: return GENERIC;
+            }
+        }
+        if (left instanceof String && right instanceof String && operator == TokenType.PLUS) {
+            return STRING_CONCAT;
+        }
+        return GENERIC;
+    }
+}
@@ -0,0 +1,59 @@
+package com.gill.jlox.ast.expressions;
+
+import com.gill.jlox.operations.LoxCallable;
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+
+import java.util.Arrays;
+
+/**
+ * Inline cache for a single FunCall site.
+ *
+ * Remembers the callees this site has already validated (is it callable, does the
+ * arity match), so a repeat call with the same target is just an identity check.
+ * Starts monomorphic, grows to MAX_ENTRIES targets (polymorphic), and past that
+ * gives up and validates every call (megamorphic) - a site which sees a fresh
+ * closure each time would otherwise only churn the cache.
+ *
+ * A site whose callee is a global also keeps the global's Binding, so the callee is
+ * looked up by name once per global Environment.
+ */
+public final class CallSiteCache {
+
+    static final int MAX_ENTRIES = 4;
+
+    private final LoxCallable[] targets = new LoxCallable[MAX_ENTRIES];
+    private int size = 0;
+    private boolean megamorphic = false;
+
+    public Environment globals;
+    public Environment.Binding global;
+
+    /**
+     * Returns callee as a LoxCallable which accepts argCount arguments, or throws.
+     */
+    public LoxCallable validate(Object callee, int argCount) throws RuntimeError {
+        for (int i = 0; i < size; i++) {
+            if (targets[i] == callee) {
+                return targets[i];
+            }
+        }
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError("Can only call functions and classes");
+        }
+        if (!function.isVariadic() && argCount != function.arity()) {
+            throw new RuntimeError("Expected " + function.arity() + " arguments but got " + argCount);
+        }
+        if (megamorphic) {
+            return function;
+        }
+        if (size < MAX_ENTRIES) {
+            targets[size++] = function;
+        } else {
+            megamorphic = true;
+            size = 0;
+            Arrays.fill(targets, null);
+        }
+        return function;
+    }
+}
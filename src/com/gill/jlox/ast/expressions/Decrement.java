@@ -1,5 +1,6 @@
 package com.gill.jlox.ast.expressions;
 
+import com.gill.jlox.operations.Resolver;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
 
@@ -7,6 +8,11 @@ public class Decrement<T> implements BaseExpr<T> {
 
     public BaseExpr expr;
     public Token token;
+
+    // Where the operand lives, so the new value can be written back directly.
+    public int depth = Resolver.DYNAMIC;
+    public int slot = -1;
+
     public Decrement(BaseExpr expr, Token token) {
         this.expr = expr;
         this.token = token;
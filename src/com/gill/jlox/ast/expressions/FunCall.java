@@ -12,6 +12,8 @@ public class FunCall<T> implements BaseExpr<T> {
     public final BaseExpr callee;
     public final Token closingParen;
     public final List<BaseExpr> args;
+    // Callees this site has already seen and validated.
+    public final CallSiteCache cache = new CallSiteCache();
 
     public FunCall(BaseExpr callee, Token closingParen, List<BaseExpr> args) {
         this.callee = callee;
@@ -1,5 +1,6 @@
 package com.gill.jlox.ast.expressions;
 
+import com.gill.jlox.operations.Resolver;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
 
@@ -7,6 +8,10 @@ public class Increment<T> implements BaseExpr<T> {
     public Token operandToken;
     public BaseExpr expr;
 
+    // Where the operand lives, so the new value can be written back directly.
+    public int depth = Resolver.DYNAMIC;
+    public int slot = -1;
+
     public Increment(BaseExpr expr, Token token) {
         this.expr = expr;
         this.operandToken = token;
@@ -6,6 +6,8 @@ import com.gill.jlox.tokens.Token;
 public class Unary<T> implements BaseExpr<T> {
     public Token operator;
     public BaseExpr right;
+    // Rewritten in place as the node observes its operand type.
+    public UnarySpecialization specialization = UnarySpecialization.UNINITIALIZED;
 
     public Unary(Token operator, BaseExpr right) {
         this.operator = operator;
@@ -0,0 +1,40 @@
+package com.gill.jlox.ast.expressions;
+
+import com.gill.jlox.runtime.Operators;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.TokenType;
+
+/**
+ * Self-specializing behaviour of a Unary node. Same scheme as BinarySpecialization.
+ */
+public enum UnarySpecialization {
+    UNINITIALIZED,
+    GENERIC,
+    NOT,
+    NUMBER_NEGATE;
+
+    public static Object execute(Unary site, Object right) throws RuntimeError {
+        switch (site.specialization) {
+            case NOT:
+                return !Operators.isTruthy(right);
+            case NUMBER_NEGATE:
+                if (right instanceof Double number) {
+                    return -number;
+                }
+                site.specialization = GENERIC;
+                return Operators.unary(site.operator, right);
+            case UNINITIALIZED:
+                if (site.operator.tokenType == TokenType.BANG) {
+                    // `!` works on any value, there's nothing to guard.
+                    site.specialization = NOT;
+                } else if (site.operator.tokenType == TokenType.MINUS && right instanceof Double) {
+                    site.specialization = NUMBER_NEGATE;
+                } else {
+                    site.specialization = GENERIC;
+                }
+                return execute(site, right);
+            default:
+                return Operators.unary(site.operator, right);
+        }
+    }
+}
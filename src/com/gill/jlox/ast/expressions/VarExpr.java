@@ -1,5 +1,6 @@
 package com.gill.jlox.ast.expressions;
 
+import com.gill.jlox.operations.Resolver;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
 
@@ -7,6 +8,11 @@ public class VarExpr<T> implements BaseExpr<T> {
 
     public Token name;
 
+    // Filled in by the Resolver: how many scopes up the variable lives
+    // and which slot it occupies there. See Resolver.GLOBAL / Resolver.DYNAMIC.
+    public int depth = Resolver.DYNAMIC;
+    public int slot = -1;
+
     public VarExpr(Token name) {
         this.name = name;
     }
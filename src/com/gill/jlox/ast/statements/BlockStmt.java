@@ -1,6 +1,5 @@
 package com.gill.jlox.ast.statements;
 
-import com.gill.jlox.operations.BreakError;
 import com.gill.jlox.runtime.RuntimeError;
 
 import java.util.List;
@@ -8,13 +7,16 @@ import java.util.List;
 public class BlockStmt<T> implements BaseStmt<T> {
 
     public final List<BaseStmt> statements;
+    // Number of variables the block declares, or -1 if it has not been resolved.
+    // 0 means the block runs in the enclosing environment, see Resolver.visitBlockStmt.
+    public int slotCount = -1;
 
     public BlockStmt(List<BaseStmt> statements) {
         this.statements = statements;
     }
 
     @Override
-    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError, BreakError {
+    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError {
         return visitor.visitBlockStmt(this);
     }
 }
@@ -1,6 +1,5 @@
 package com.gill.jlox.ast.statements;
 
-import com.gill.jlox.operations.BreakError;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.ast.expressions.BaseExpr;
 
@@ -14,7 +13,7 @@ public class ForStmt<T> implements BaseStmt<T> {
     }
 
     @Override
-    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError, BreakError {
+    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError {
         return visitor.visitForStmt(this);
     }
 }
@@ -1,6 +1,5 @@
 package com.gill.jlox.ast.statements;
 
-import com.gill.jlox.operations.BreakError;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
 
@@ -12,7 +11,18 @@ import java.util.List;
 public class FunStmt<T> implements BaseStmt<T> {
     public final Token funIdentifier;
     public final List<Token> parameters;
-    public final List<BaseStmt> body;
+    // Null while the body is deferred; use body().
+    private List<BaseStmt> body;
+    // Set instead of body when the Parser skipped over it (--lazy-parse).
+    public DeferredBody deferredBody;
+    // Slot of the function name in the enclosing local scope (-1 for globals and lambdas),
+    // and number of slots needed by a call frame (parameters + body declarations).
+    public int slot = -1;
+    public int slotCount = -1;
+    // Set by the Resolver: false when nothing in the body can get at a call's locals other than
+    // through their slots - no function or lambda to capture them, no DYNAMIC reference or
+    // env() call to find them by name.
+    public boolean localsEscape = true;
 
     public FunStmt(Token funIdentifier, List<Token> parameters, List<BaseStmt> body) {
         this.funIdentifier = funIdentifier;
@@ -20,8 +30,37 @@ public class FunStmt<T> implements BaseStmt<T> {
         this.body = body;
     }
 
+    public FunStmt(Token funIdentifier, List<Token> parameters, DeferredBody deferredBody) {
+        this.funIdentifier = funIdentifier;
+        this.parameters = parameters;
+        this.deferredBody = deferredBody;
+    }
+
+    /**
+     * Parses and resolves a function body the first time it is needed.
+     */
+    public interface DeferredBody {
+        List<BaseStmt> parse() throws RuntimeError;
+    }
+
+    public boolean isParsed() {
+        return body != null;
+    }
+
+    /**
+     * The statements of the body, parsing (and resolving) them first if they were deferred.
+     * A syntax error in a deferred body only turns up here, as a RuntimeError.
+     */
+    public List<BaseStmt> body() throws RuntimeError {
+        if (body == null) {
+            body = deferredBody.parse();
+            deferredBody = null;
+        }
+        return body;
+    }
+
     @Override
-    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError, BreakError {
+    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError {
         return visitor.visitFunStmt(this);
     }
 }
@@ -1,6 +1,5 @@
 package com.gill.jlox.ast.statements;
 
-import com.gill.jlox.operations.BreakError;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.ast.expressions.BaseExpr;
 
@@ -16,7 +15,7 @@ public class IfStmt<T> implements BaseStmt<T> {
     }
 
     @Override
-    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError, BreakError {
+    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError {
         return visitor.visitIfStmt(this);
     }
 }
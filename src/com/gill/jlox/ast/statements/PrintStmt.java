@@ -12,7 +12,6 @@ public class PrintStmt<T> implements BaseStmt<T> {
 
     @Override
     public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError {
-        visitor.visitPrintStmt(this);
-        return null;
+        return visitor.visitPrintStmt(this);
     }
 }
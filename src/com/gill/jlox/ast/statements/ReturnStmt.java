@@ -1,18 +1,21 @@
 package com.gill.jlox.ast.statements;
 
 import com.gill.jlox.ast.expressions.BaseExpr;
-import com.gill.jlox.operations.BreakError;
+import com.gill.jlox.ast.expressions.FunCall;
 import com.gill.jlox.runtime.RuntimeError;
 
 public class ReturnStmt<T> implements BaseStmt<T> {
     public final BaseExpr returnValue;
+    // Set by the Resolver when a function returns the result of a call: the call is the last
+    // thing the function does, so it can take over the caller's place instead of nesting in it.
+    public FunCall tailCall;
 
     public ReturnStmt(BaseExpr returnValue) {
         this.returnValue = returnValue;
     }
 
     @Override
-    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError, BreakError {
+    public Object accept(BaseStmtVisitor<T> visitor) throws RuntimeError {
         return visitor.visitReturnStmt(this);
     }
 }
@@ -7,6 +7,11 @@ import com.gill.jlox.ast.expressions.BaseExpr;
 public class VarStmt<T> implements BaseStmt<T> {
     public Token name;
     public BaseExpr initializer;
+    // Slot in the enclosing local scope, or -1 for a global declaration.
+    public int slot = -1;
+    // Set when the slot belongs to an enclosing scope's environment (see Resolver.visitBlockStmt):
+    // the value goes in the slot without binding the name there.
+    public boolean hoisted = false;
 
     public VarStmt(Token name, BaseExpr initializer) {
         this.name = name;
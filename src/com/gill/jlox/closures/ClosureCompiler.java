@@ -0,0 +1,559 @@
+package com.gill.jlox.closures;
+
+import com.gill.jlox.ast.expressions.*;
+import com.gill.jlox.ast.statements.*;
+import com.gill.jlox.operations.BuiltIns;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.LoxCallable;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.GlobalRef;
+import com.gill.jlox.runtime.Operators;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenType;
+
+import java.util.List;
+
+/**
+ * Closure-compiling execution engine (--engine=closure).
+ *
+ * Walks the resolved SyntaxTree exactly once and turns every node into a Java lambda
+ * (ExprNode / NumberExpr / StmtExec) that already knows what it has to do: which
+ * operator, which (depth, slot), which branch layout. Running the program is then just
+ * calling those lambdas - no visitor double-dispatch and no switch on TokenType per
+ * evaluation - and HotSpot gets small, monomorphic call sites it can inline.
+ *
+ * It shares Environment, Operators and LoxCallable with the Evaluator, so values
+ * and scoping behave the same way.
+ */
+public class ClosureCompiler {
+
+    // Completion markers returned by StmtExec. The returned value itself goes through returnValue.
+    static final Object BREAK = new Object();
+    static final Object RETURN = new Object();
+    // `return f(...)`: CompiledFunction.invoke runs tailFunction in tailFrame next, see compileTailCall.
+    static final Object TAIL_CALL = new Object();
+
+    public final Environment globalEnv = new Environment();
+    // Environment at the most recent native call, for the env() builtin.
+    private Environment currentEnv = globalEnv;
+    private Object returnValue;
+    CompiledFunction tailFunction;
+    Environment tailFrame;
+
+    public ClosureCompiler() {
+        globalEnv.define("clock", new BuiltIns.Clock());
+        globalEnv.define("env", new ScopeEnv());
+        globalEnv.define("println", new BuiltIns.RawPrint());
+    }
+
+    private class ScopeEnv implements LoxCallable {
+        @Override
+        public Object call(Evaluator evaluator, List<Object> args) {
+            return currentEnv;
+        }
+
+        @Override
+        public int arity() {
+            return 0;
+        }
+
+        @Override
+        public boolean isVariadic() {
+            return false;
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+
+    /**
+     * Compiles and runs each top-level statement in turn, reporting runtime errors
+     * and carrying on, like Evaluator.evaluate(List).
+     */
+    public Object interpret(List<BaseStmt> statements) throws RuntimeError {
+        Object lastResult = null;
+        for (BaseStmt statement : statements) {
+            try {
+                if (statement instanceof ExprStmt exprStmt) {
+                    lastResult = compile(exprStmt.expression).eval(globalEnv);
+                } else {
+                    compile(statement).exec(globalEnv);
+                    lastResult = null;
+                }
+            } catch (RuntimeError runtimeError) {
+                System.err.println(runtimeError.getMessage());
+            }
+        }
+        return lastResult;
+    }
+
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    // Statements
+
+    StmtExec compile(BaseStmt stmt) throws RuntimeError {
+        if (stmt instanceof ExprStmt exprStmt) {
+            ExprNode expr = compile(exprStmt.expression);
+            return env -> {
+                expr.eval(env);
+                return null;
+            };
+        }
+        if (stmt instanceof PrintStmt printStmt) {
+            ExprNode expr = compile(printStmt.expression);
+            return env -> {
+                System.out.println(expr.eval(env));
+                return null;
+            };
+        }
+        if (stmt instanceof VarStmt varStmt) {
+            ExprNode init = varStmt.initializer != null ? compile(varStmt.initializer) : env -> null;
+            return compileDefine(varStmt.hoisted ? null : varStmt.name.lexeme, varStmt.slot, init);
+        }
+        if (stmt instanceof BlockStmt blockStmt) {
+            StmtExec[] body = compileAll(blockStmt.statements);
+            int slotCount = blockStmt.slotCount;
+            if (slotCount < 0) {
+                throw new RuntimeError("Closure compiler: block was not resolved");
+            }
+            if (slotCount == 0) {
+                return env -> runBlock(body, env);
+            }
+            return env -> runBlock(body, new Environment(env, slotCount));
+        }
+        if (stmt instanceof IfStmt ifStmt) {
+            ExprNode cond = compile(ifStmt.condition);
+            StmtExec thenBranch = compile(ifStmt.thenBranch);
+            if (ifStmt.elseBranch == null) {
+                return env -> Operators.isTruthy(cond.eval(env)) ? thenBranch.exec(env) : null;
+            }
+            StmtExec elseBranch = compile(ifStmt.elseBranch);
+            return env -> Operators.isTruthy(cond.eval(env)) ? thenBranch.exec(env) : elseBranch.exec(env);
+        }
+        if (stmt instanceof WhileStmt whileStmt) {
+            return compileLoop(compile(whileStmt.condition), compile(whileStmt.body));
+        }
+        if (stmt instanceof ForStmt forStmt) {
+            return compileLoop(compile(forStmt.condition), compile(forStmt.body));
+        }
+        if (stmt instanceof BreakStmt) {
+            return env -> BREAK;
+        }
+        if (stmt instanceof ReturnStmt returnStmt) {
+            if (returnStmt.tailCall != null) {
+                return compileTailCall(returnStmt.tailCall);
+            }
+            if (returnStmt.returnValue == null) {
+                return env -> {
+                    returnValue = null;
+                    return RETURN;
+                };
+            }
+            ExprNode value = compile(returnStmt.returnValue);
+            return env -> {
+                returnValue = value.eval(env);
+                return RETURN;
+            };
+        }
+        if (stmt instanceof FunStmt funStmt) {
+            ExprNode function = compileFunction(funStmt, funStmt.funIdentifier.lexeme);
+            return compileDefine(funStmt.funIdentifier.lexeme, funStmt.slot, function);
+        }
+        throw new RuntimeError("Closure compiler: unsupported statement " + stmt);
+    }
+
+    private StmtExec[] compileAll(List<BaseStmt> statements) throws RuntimeError {
+        StmtExec[] compiled = new StmtExec[statements.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compile(statements.get(i));
+        }
+        return compiled;
+    }
+
+    private static Object runBlock(StmtExec[] body, Environment env) throws RuntimeError {
+        for (StmtExec stmt : body) {
+            Object completion = stmt.exec(env);
+            if (completion != null) {
+                return completion;
+            }
+        }
+        return null;
+    }
+
+    private static StmtExec compileLoop(ExprNode cond, StmtExec body) {
+        return env -> {
+            while (Operators.isTruthy(cond.eval(env))) {
+                Object completion = body.exec(env);
+                if (completion == BREAK) {
+                    break;
+                } else if (completion != null) {
+                    return completion;
+                }
+            }
+            return null;
+        };
+    }
+
+    private static StmtExec compileDefine(String name, int slot, ExprNode value) {
+        if (slot >= 0) {
+            return env -> {
+                env.defineAt(slot, name, value.eval(env));
+                return null;
+            };
+        }
+        return env -> {
+            env.define(name, value.eval(env));
+            return null;
+        };
+    }
+
+    private ExprNode compileFunction(FunStmt funStmt, String name) throws RuntimeError {
+        String[] parameters = new String[funStmt.parameters.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = ((Token) funStmt.parameters.get(i)).lexeme;
+        }
+        if (!funStmt.isParsed()) {
+            // --lazy-parse: leave the body alone until the function is called, so a syntax
+            // error in it only matters to a program that calls it - as with the Evaluator.
+            Deferred deferred = new Deferred(funStmt);
+            return env -> new CompiledFunction(this, name, parameters, deferred, env);
+        }
+        StmtExec[] body = compileBody(funStmt, name);
+        int slotCount = funStmt.slotCount;
+        return env -> new CompiledFunction(this, name, parameters, slotCount, body, env);
+    }
+
+    private StmtExec[] compileBody(FunStmt funStmt, String name) throws RuntimeError {
+        List<BaseStmt> statements = funStmt.body();
+        if (funStmt.slotCount < 0) {
+            throw new RuntimeError("Closure compiler: function '" + name + "' was not resolved");
+        }
+        return compileAll(statements);
+    }
+
+    /**
+     * A function declaration whose body was deferred by the Parser. Every CompiledFunction
+     * made from it shares this, so the body is parsed and compiled once, on the first call
+     * of any of them.
+     */
+    static final class Deferred {
+        final FunStmt funStmt;
+        StmtExec[] body;
+
+        Deferred(FunStmt funStmt) {
+            this.funStmt = funStmt;
+        }
+    }
+
+    // Expressions
+
+    ExprNode compile(BaseExpr expr) throws RuntimeError {
+        NumberExpr number = compileNumber(expr);
+        if (number != null && !(expr instanceof Literal)) {
+            // Statically numeric sub-tree: stay on doubles and box once at the end.
+            return env -> number.evalNumber(env);
+        }
+        if (expr instanceof Literal literal) {
+            Object value = literal.value;
+            return env -> value;
+        }
+        if (expr instanceof Grouping grouping) {
+            return compile(grouping.expr);
+        }
+        if (expr instanceof Unary unary) {
+            ExprNode right = compile(unary.right);
+            if (unary.operator.tokenType == TokenType.BANG) {
+                return env -> !Operators.isTruthy(right.eval(env));
+            }
+            return env -> Operators.negate(right.eval(env));
+        }
+        if (expr instanceof Binary binary) {
+            return compileBinary(binary);
+        }
+        if (expr instanceof VarExpr varExpr) {
+            return compileGet(varExpr.name, varExpr.depth, varExpr.slot);
+        }
+        if (expr instanceof AssignExpr assignExpr) {
+            return compileSet(assignExpr.name, assignExpr.depth, assignExpr.slot, compile(assignExpr.value));
+        }
+        if (expr instanceof LogicalExpr logicalExpr) {
+            ExprNode lhs = compile(logicalExpr.lhs);
+            ExprNode rhs = compile(logicalExpr.rhs);
+            if (logicalExpr.operator.tokenType == TokenType.OR) {
+                return env -> {
+                    Object left = lhs.eval(env);
+                    return Operators.isTruthy(left) ? left : rhs.eval(env);
+                };
+            }
+            return env -> {
+                Object left = lhs.eval(env);
+                return !Operators.isTruthy(left) ? left : rhs.eval(env);
+            };
+        }
+        if (expr instanceof Increment increment) {
+            ExprNode operand = compile(increment.expr);
+            return compileSet(increment.operandToken, increment.depth, increment.slot,
+                    env -> Operators.increment(operand.eval(env)));
+        }
+        if (expr instanceof Decrement decrement) {
+            ExprNode operand = compile(decrement.expr);
+            return compileSet(decrement.token, decrement.depth, decrement.slot,
+                    env -> Operators.decrement(operand.eval(env)));
+        }
+        if (expr instanceof FunCall funCall) {
+            return compileCall(funCall);
+        }
+        if (expr instanceof LambdaExpr lambdaExpr) {
+            return compileFunction(lambdaExpr.loxLambda, "anonFn");
+        }
+        throw new RuntimeError("Closure compiler: unsupported expression " + expr);
+    }
+
+    /**
+     * Returns a NumberExpr if the expression can only ever produce a number
+     * (number literals and arithmetic on them), null otherwise.
+     */
+    private NumberExpr compileNumber(BaseExpr expr) throws RuntimeError {
+        if (expr instanceof Literal literal && literal.value instanceof Double value) {
+            double constant = value;
+            return env -> constant;
+        }
+        if (expr instanceof Grouping grouping) {
+            return compileNumber(grouping.expr);
+        }
+        if (expr instanceof Unary unary && unary.operator.tokenType == TokenType.MINUS) {
+            NumberExpr right = compileNumber(unary.right);
+            return right == null ? null : env -> -right.evalNumber(env);
+        }
+        if (expr instanceof Binary binary) {
+            NumberExpr left = compileNumber(binary.left);
+            NumberExpr right = left == null ? null : compileNumber(binary.right);
+            if (right == null) {
+                return null;
+            }
+            switch (binary.operator.tokenType) {
+                case PLUS: return env -> left.evalNumber(env) + right.evalNumber(env);
+                case MINUS: return env -> left.evalNumber(env) - right.evalNumber(env);
+                case STAR: return env -> left.evalNumber(env) * right.evalNumber(env);
+                default: return null;
+            }
+        }
+        return null;
+    }
+
+    private ExprNode compileBinary(Binary binary) throws RuntimeError {
+        ExprNode left = compile(binary.left);
+        // `n - 1`, `i < 10`: a number literal on the right is by far the most common shape.
+        if (binary.right instanceof Literal literal && literal.value instanceof Double value) {
+            double constant = value;
+            switch (binary.operator.tokenType) {
+                case PLUS:
+                    return env -> {
+                        Object l = left.eval(env);
+                        return l instanceof Double d ? (Object) (d + constant) : Operators.add(l, value);
+                    };
+                case MINUS:
+                    return env -> {
+                        Object l = left.eval(env);
+                        return l instanceof Double d ? (Object) (d - constant) : Operators.subtract(l, value);
+                    };
+                case LESS:
+                    return env -> {
+                        Object l = left.eval(env);
+                        return l instanceof Double d ? (Object) (d < constant) : Operators.less(l, value);
+                    };
+                case LESS_EQUAL:
+                    return env -> {
+                        Object l = left.eval(env);
+                        return l instanceof Double d ? (Object) (d <= constant) : Operators.lessEqual(l, value);
+                    };
+                case GREATER:
+                    return env -> {
+                        Object l = left.eval(env);
+                        return l instanceof Double d ? (Object) (d > constant) : Operators.greater(l, value);
+                    };
+                case GREATER_EQUAL:
+                    return env -> {
+                        Object l = left.eval(env);
+                        return l instanceof Double d ? (Object) (d >= constant) : Operators.greaterEqual(l, value);
+                    };
+                default:
+                    break;
+            }
+        }
+        ExprNode right = compile(binary.right);
+        return switch (binary.operator.tokenType) {
+            case PLUS -> env -> Operators.add(left.eval(env), right.eval(env));
+            case MINUS -> env -> Operators.subtract(left.eval(env), right.eval(env));
+            case STAR -> env -> Operators.multiply(left.eval(env), right.eval(env));
+            case SLASH -> env -> Operators.divide(left.eval(env), right.eval(env));
+            case PERCENT -> env -> Operators.modulo(left.eval(env), right.eval(env));
+            case GREATER -> env -> Operators.greater(left.eval(env), right.eval(env));
+            case GREATER_EQUAL -> env -> Operators.greaterEqual(left.eval(env), right.eval(env));
+            case LESS -> env -> Operators.less(left.eval(env), right.eval(env));
+            case LESS_EQUAL -> env -> Operators.lessEqual(left.eval(env), right.eval(env));
+            case EQUAL_EQUAL -> env -> Operators.isEqual(left.eval(env), right.eval(env));
+            case BANG_EQUAL -> env -> !Operators.isEqual(left.eval(env), right.eval(env));
+            default -> {
+                Token operator = binary.operator;
+                yield env -> Operators.binary(operator, left.eval(env), right.eval(env));
+            }
+        };
+    }
+
+    private ExprNode compileGet(Token name, int depth, int slot) {
+        if (depth == 0) {
+            return env -> env.getAt(0, slot);
+        } else if (depth > 0) {
+            return env -> env.getAt(depth, slot);
+        } else if (depth == Resolver.GLOBAL) {
+            GlobalRef global = new GlobalRef(name);
+            return env -> global.get(globalEnv);
+        }
+        return env -> env.getEnvByToken(name);
+    }
+
+    private ExprNode compileSet(Token name, int depth, int slot, ExprNode value) {
+        if (depth >= 0) {
+            return env -> {
+                Object v = value.eval(env);
+                env.assignAt(depth, slot, v);
+                return v;
+            };
+        } else if (depth == Resolver.GLOBAL) {
+            GlobalRef global = new GlobalRef(name);
+            return env -> {
+                Object v = value.eval(env);
+                global.set(globalEnv, v);
+                return v;
+            };
+        }
+        return env -> {
+            Object v = value.eval(env);
+            env.assign(name, v);
+            return v;
+        };
+    }
+
+    private ExprNode compileCall(FunCall funCall) throws RuntimeError {
+        ExprNode callee = compile(funCall.callee);
+        ExprNode[] args = compileArgs(funCall);
+        // One and two arguments cover most calls. Filling the frame right here, rather than
+        // in frame()'s loop, gives every call site its own argument evaluation: the loop is
+        // shared by the whole program, so its profile is polluted and its inlining deoptimized.
+        if (args.length == 1) {
+            ExprNode arg0 = args[0];
+            return env -> {
+                Object target = callee.eval(env);
+                if (target instanceof CompiledFunction function) {
+                    prepare(function, 1);
+                    Environment frame = new Environment(function.closure, function.slotCount);
+                    frame.defineAt(0, function.parameters[0], arg0.eval(env));
+                    return function.invoke(frame);
+                }
+                return callOther(target, args, env);
+            };
+        }
+        if (args.length == 2) {
+            ExprNode arg0 = args[0];
+            ExprNode arg1 = args[1];
+            return env -> {
+                Object target = callee.eval(env);
+                if (target instanceof CompiledFunction function) {
+                    prepare(function, 2);
+                    Environment frame = new Environment(function.closure, function.slotCount);
+                    frame.defineAt(0, function.parameters[0], arg0.eval(env));
+                    frame.defineAt(1, function.parameters[1], arg1.eval(env));
+                    return function.invoke(frame);
+                }
+                return callOther(target, args, env);
+            };
+        }
+        return env -> {
+            Object target = callee.eval(env);
+            if (target instanceof CompiledFunction function) {
+                return function.invoke(frame(function, args, env));
+            }
+            return callOther(target, args, env);
+        };
+    }
+
+    /**
+     * Like Evaluator.tailCall: a CompiledFunction called in tail position is not invoked
+     * here, on top of its caller, but by the invoke() running the caller once that returns.
+     */
+    private StmtExec compileTailCall(FunCall funCall) throws RuntimeError {
+        ExprNode callee = compile(funCall.callee);
+        ExprNode[] args = compileArgs(funCall);
+        return env -> {
+            Object target = callee.eval(env);
+            if (target instanceof CompiledFunction function) {
+                tailFrame = frame(function, args, env);
+                tailFunction = function;
+                return TAIL_CALL;
+            }
+            returnValue = callOther(target, args, env);
+            return RETURN;
+        };
+    }
+
+    private ExprNode[] compileArgs(FunCall funCall) throws RuntimeError {
+        ExprNode[] args = new ExprNode[funCall.args.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = compile((BaseExpr) funCall.args.get(i));
+        }
+        return args;
+    }
+
+    private static Environment frame(CompiledFunction function, ExprNode[] args, Environment env) throws RuntimeError {
+        prepare(function, args.length);
+        // Arguments go straight into the new frame's parameter slots.
+        Environment frame = new Environment(function.closure, function.slotCount);
+        for (int i = 0; i < args.length; i++) {
+            frame.defineAt(i, function.parameters[i], args[i].eval(env));
+        }
+        return frame;
+    }
+
+    /**
+     * Checks the argument count of a call to function and, if its body is still deferred,
+     * parses, resolves and compiles it - before anyone looks at slotCount. A syntax error
+     * in the body is thrown as a RuntimeError, and the function stays deferred.
+     */
+    static void prepare(CompiledFunction function, int argCount) throws RuntimeError {
+        if (function.parameters.length != argCount) {
+            throw new RuntimeError("Expected " + function.parameters.length + " arguments but got " + argCount);
+        }
+        if (function.deferred != null) {
+            Deferred deferred = function.deferred;
+            if (deferred.body == null) {
+                deferred.body = function.compiler.compileBody(deferred.funStmt, function.name);
+            }
+            function.body = deferred.body;
+            function.slotCount = deferred.funStmt.slotCount;
+            function.deferred = null;
+        }
+    }
+
+    private Object callOther(Object target, ExprNode[] args, Environment env) throws RuntimeError {
+        if (!(target instanceof LoxCallable callable)) {
+            throw new RuntimeError("Can only call functions and classes");
+        }
+        int argCount = args.length;
+        Object[] evaluatedArgs = new Object[argCount];
+        for (int i = 0; i < argCount; i++) {
+            evaluatedArgs[i] = args[i].eval(env);
+        }
+        if (!callable.isVariadic() && argCount != callable.arity()) {
+            throw new RuntimeError("Expected " + callable.arity() + " arguments but got " + argCount);
+        }
+        currentEnv = env;
+        return callable.callN(null, evaluatedArgs);
+    }
+}
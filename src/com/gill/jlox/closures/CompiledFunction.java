@@ -0,0 +1,98 @@
+package com.gill.jlox.closures;
+
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.LoxCallable;
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+
+import java.util.List;
+
+/**
+ * Runtime function value of the closure-compiling engine:
+ * a compiled body plus the Environment it closes over.
+ *
+ * With --lazy-parse the body may not even be parsed yet when the declaration runs. Then
+ * deferred holds it, and the first call has the ClosureCompiler fill in body and slotCount
+ * (see ClosureCompiler.prepare).
+ */
+public class CompiledFunction implements LoxCallable {
+    final String name;
+    final String[] parameters;
+    // Set with the body, so not known yet while the function is deferred.
+    int slotCount;
+    StmtExec[] body;
+    final Environment closure;
+    // The declaration's body still to be parsed and compiled; null once it has been.
+    ClosureCompiler.Deferred deferred;
+    final ClosureCompiler compiler;
+
+    CompiledFunction(ClosureCompiler compiler, String name, String[] parameters, int slotCount,
+                     StmtExec[] body, Environment closure) {
+        this.compiler = compiler;
+        this.name = name;
+        this.parameters = parameters;
+        this.slotCount = slotCount;
+        this.body = body;
+        this.closure = closure;
+    }
+
+    CompiledFunction(ClosureCompiler compiler, String name, String[] parameters,
+                     ClosureCompiler.Deferred deferred, Environment closure) {
+        this(compiler, name, parameters, -1, null, closure);
+        this.deferred = deferred;
+    }
+
+    /**
+     * Runs the body in a fresh frame whose parameter slots are already filled in.
+     * A body ending in a tail call hands over the callee and its frame, which run here
+     * next, in the same Java frame.
+     */
+    Object invoke(Environment frame) throws RuntimeError {
+        CompiledFunction function = this;
+        for (;;) {
+            Object completion = function.run(frame);
+            if (completion != ClosureCompiler.TAIL_CALL) {
+                return completion == ClosureCompiler.RETURN ? compiler.takeReturnValue() : null;
+            }
+            function = compiler.tailFunction;
+            frame = compiler.tailFrame;
+            compiler.tailFunction = null;
+            compiler.tailFrame = null;
+        }
+    }
+
+    private Object run(Environment frame) throws RuntimeError {
+        for (StmtExec stmt : body) {
+            Object completion = stmt.exec(frame);
+            if (completion == ClosureCompiler.RETURN || completion == ClosureCompiler.TAIL_CALL) {
+                return completion;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object call(Evaluator evaluator, List<Object> args) throws RuntimeError {
+        ClosureCompiler.prepare(this, args.size());
+        Environment frame = new Environment(closure, slotCount);
+        for (int i = 0; i < parameters.length; i++) {
+            frame.defineAt(i, parameters[i], args.get(i));
+        }
+        return invoke(frame);
+    }
+
+    @Override
+    public int arity() {
+        return parameters.length;
+    }
+
+    @Override
+    public boolean isVariadic() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn:" + name + ">";
+    }
+}
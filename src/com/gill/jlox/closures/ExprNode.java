@@ -0,0 +1,12 @@
+package com.gill.jlox.closures;
+
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+
+/**
+ * A compiled expression: evaluates to a value in the given environment.
+ */
+@FunctionalInterface
+public interface ExprNode {
+    Object eval(Environment env) throws RuntimeError;
+}
@@ -0,0 +1,13 @@
+package com.gill.jlox.closures;
+
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+
+/**
+ * A compiled expression which is statically known to produce a number,
+ * eg. `2 * 3 + 1`. Chains of these stay on primitive doubles and only box once.
+ */
+@FunctionalInterface
+public interface NumberExpr {
+    double evalNumber(Environment env) throws RuntimeError;
+}
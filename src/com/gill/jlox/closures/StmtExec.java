@@ -0,0 +1,13 @@
+package com.gill.jlox.closures;
+
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+
+/**
+ * A compiled statement. Returns null when execution should carry on with the
+ * next statement, or one of the ClosureCompiler completion markers (BREAK/RETURN).
+ */
+@FunctionalInterface
+public interface StmtExec {
+    Object exec(Environment env) throws RuntimeError;
+}
@@ -1,6 +0,0 @@
-package com.gill.jlox.operations;
-
-public enum Associativity {
-    LEFT,
-    RIGHT
-}
@@ -1,7 +0,0 @@
-package com.gill.jlox.operations;
-
-public class BreakError extends Exception {
-    public BreakError(String msg) {
-        super(msg);
-    }
-}
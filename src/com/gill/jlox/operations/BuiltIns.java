@@ -21,6 +21,21 @@ public class BuiltIns {
             return null;
         }
 
+        @Override
+        public Object call1(Evaluator evaluator, Object arg0) {
+            System.out.println(arg0);
+            return null;
+        }
+
+        @Override
+        public Object callN(Evaluator evaluator, Object[] args) {
+            for (Object arg: args) {
+                System.out.print(arg);
+            }
+            System.out.println();
+            return null;
+        }
+
         @Override
         public int arity() {
             if (args != null) {
@@ -43,6 +58,11 @@ public class BuiltIns {
             return evaluator.env;
         }
 
+        @Override
+        public Object call0(Evaluator evaluator) {
+            return evaluator.env;
+        }
+
         @Override
         public int arity() {
             return 0;
@@ -60,6 +80,11 @@ public class BuiltIns {
 
         @Override
         public Object call(Evaluator evaluator, List<Object> args) {
+            return call0(evaluator);
+        }
+
+        @Override
+        public Object call0(Evaluator evaluator) {
             return System.currentTimeMillis() / 1000.0;
         }
 
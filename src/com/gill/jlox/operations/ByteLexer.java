@@ -0,0 +1,318 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.LoxKeywords;
+import com.gill.jlox.tokens.TokenBuffer;
+import com.gill.jlox.tokens.TokenType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lexer front end for script files: scans the UTF-8 bytes of a (memory-mapped) file
+ * directly, instead of reading them into a byte[] and decoding that into a String first.
+ *
+ * It recognises exactly the same tokens as Lexer. Everything Lox cares about outside
+ * string literals and comments is ASCII, so one byte is one character there; multi-byte
+ * sequences are simply skipped over inside strings and comments. Nothing is decoded
+ * while scanning - TokenBuffer decodes a lexeme from the bytes when somebody asks for it.
+ *
+ * Runs of whitespace, comments, string literals and identifiers are skipped a word
+ * (eight bytes) at a time, see WordScan; the last few bytes before the end are done one
+ * by one. new ByteLexer(false) scans everything a byte at a time, as a reference.
+ */
+public class ByteLexer implements TokenSource {
+
+    private final boolean wordAtATime;
+    private ByteBuffer src;
+    private int startIdx = 0;
+    private int currentIdx = 0;
+    private int line = 1;
+    private int sourceSize = 0;
+    private TokenBuffer tokens;
+
+    public ByteLexer() {
+        this(true);
+    }
+
+    public ByteLexer(boolean wordAtATime) {
+        this.wordAtATime = wordAtATime;
+    }
+
+    public TokenBuffer scan(ByteBuffer src) throws Lexer.LexerError {
+        start(src, new TokenBuffer(src));
+        while (this.currentIdx < this.sourceSize) {
+            addNextToken();
+            this.startIdx = this.currentIdx;
+        }
+        this.tokens.add(TokenType.EOF, this.currentIdx, 0, this.line);
+        return this.tokens;
+    }
+
+    /**
+     * Scans src lazily, as the Parser pulls tokens with scanNext. See Lexer.stream.
+     */
+    public TokenSource stream(ByteBuffer src) {
+        start(src, new TokenBuffer(src, Lexer.STREAM_WINDOW));
+        return this;
+    }
+
+    /**
+     * Scans src from `from` up to `to` into tokens, without an EOF. See Lexer.scanRange.
+     */
+    int scanRange(ByteBuffer src, int from, int to, int line, TokenBuffer tokens) throws Lexer.LexerError {
+        start(src, tokens);
+        this.sourceSize = to;
+        this.currentIdx = from;
+        this.startIdx = from;
+        this.line = line;
+        while (this.currentIdx < this.sourceSize) {
+            addNextToken();
+            this.startIdx = this.currentIdx;
+        }
+        return this.line;
+    }
+
+    private void start(ByteBuffer src, TokenBuffer tokens) {
+        // Our own view of the bytes, so words can be read little-endian without touching the caller's buffer.
+        this.src = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.sourceSize = src.limit();
+        this.tokens = tokens;
+        this.currentIdx = 0;
+        this.startIdx = 0;
+        this.line = 1;
+    }
+
+    @Override
+    public TokenBuffer buffer() {
+        return this.tokens;
+    }
+
+    @Override
+    public boolean scanNext() throws Lexer.LexerError {
+        int scanned = this.tokens.size();
+        while (this.currentIdx < this.sourceSize) {
+            addNextToken();
+            this.startIdx = this.currentIdx;
+            if (this.tokens.size() > scanned) {
+                return true;
+            }
+        }
+        if (this.currentIdx == this.sourceSize) {
+            this.tokens.add(TokenType.EOF, this.currentIdx, 0, this.line);
+            this.currentIdx++;
+            return true;
+        }
+        return false;
+    }
+
+    private void addNextToken() throws Lexer.LexerError {
+        byte c = advance();
+        switch (c) {
+            case '(': addToken(TokenType.LEFT_PAREN); break;
+            case ')': addToken(TokenType.RIGHT_PAREN); break;
+            case '{': addToken(TokenType.LEFT_BRACE); break;
+            case '}': addToken(TokenType.RIGHT_BRACE); break;
+            case ',': addToken(TokenType.COMMA); break;
+            case '.': addToken(TokenType.DOT); break;
+            case '-':
+                addToken(currentMatch('-') ? TokenType.MINUS_MINUS : TokenType.MINUS);
+                break;
+            case '+':
+                addToken(currentMatch('+') ? TokenType.PLUS_PLUS : TokenType.PLUS);
+                break;
+            case ';': addToken(TokenType.SEMICOLON); break;
+            case '*': addToken(TokenType.STAR); break;
+            case '%': addToken(TokenType.PERCENT); break;
+            case '!':
+                addToken(currentMatch('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
+                break;
+            case '=':
+                addToken(currentMatch('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
+                break;
+            case '<':
+                addToken(currentMatch('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
+                break;
+            case '>':
+                addToken(currentMatch('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
+                break;
+            case '&':
+                addToken(currentMatch('&') ? TokenType.AND : null);
+                break;
+            case '|':
+                addToken(currentMatch('|') ? TokenType.OR : null);
+                break;
+            case '/':
+                if (peek() == '/') {
+                    skipTo('\n');
+                    while (peek() != '\n' && !isEnd()) {
+                        advance();
+                    }
+                } else {
+                    addToken(TokenType.SLASH);
+                }
+                break;
+            case ' ':
+            case '\r':
+            case '\t':
+                skipWhitespace();
+                break;
+            case '\n':
+                this.line++;
+                skipWhitespace();
+                break;
+            case '"':
+                addString();
+                break;
+            default: {
+                if (isDigit(c)) {
+                    addNumber();
+                } else if (isAlpha(c)) {
+                    addIdentifier();
+                } else {
+                    throw new Lexer.LexerError(line + ": Unexpected Character: '" + characterAt(startIdx) + "'");
+                }
+            }
+        }
+    }
+
+    private void addString() throws Lexer.LexerError {
+        skipTo('"');
+        while (peek() != '"' && !isEnd()) {
+            if (peek() == '\n') this.line++;
+            advance();
+        }
+        if (isEnd()) {
+            throw new Lexer.LexerError(this.line + ": Unterminated string.");
+        }
+        // Consume the terminating quote symbol
+        advance();
+        addToken(TokenType.STRING);
+    }
+
+    private void addIdentifier() {
+        if (wordAtATime) {
+            while (currentIdx + 8 <= sourceSize) {
+                int run = WordScan.firstClear(WordScan.identifier(src.getLong(currentIdx)));
+                currentIdx += run;
+                if (run < 8) {
+                    break;
+                }
+            }
+        }
+        while (isAlpha(peek()) || isDigit(peek())) {
+            advance();
+        }
+        addToken(keywordOrIdentifier());
+    }
+
+    // See Lexer.keywordOrIdentifier.
+    private TokenType keywordOrIdentifier() {
+        int length = currentIdx - startIdx;
+        int second = length > 1 ? src.get(startIdx + 1) : 0;
+        TokenType keyword = LoxKeywords.candidate(length, src.get(startIdx), second);
+        if (keyword == null) {
+            return TokenType.IDENTIFIER;
+        }
+        String spelling = LoxKeywords.spelling(keyword);
+        for (int i = 1; i < length; i++) {
+            if (src.get(startIdx + i) != spelling.charAt(i)) {
+                return TokenType.IDENTIFIER;
+            }
+        }
+        return keyword;
+    }
+
+    /**
+     * Moves on to the next `stop` byte (a '"' or '\n'), counting the newlines passed, as far
+     * as whole words go. The byte-at-a-time loop after it finishes the job.
+     */
+    private void skipTo(char stop) {
+        if (!wordAtATime) return;
+        while (currentIdx + 8 <= sourceSize) {
+            long word = src.getLong(currentIdx);
+            int run = WordScan.firstSet(WordScan.equalTo(word, stop));
+            if (stop != '\n') {
+                this.line += Long.bitCount(WordScan.before(WordScan.equalTo(word, '\n'), run));
+            }
+            currentIdx += run;
+            if (run < 8) {
+                return;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        if (!wordAtATime) return;
+        while (currentIdx + 8 <= sourceSize) {
+            long word = src.getLong(currentIdx);
+            int run = WordScan.firstClear(WordScan.whitespace(word));
+            this.line += Long.bitCount(WordScan.before(WordScan.equalTo(word, '\n'), run));
+            currentIdx += run;
+            if (run < 8) {
+                return;
+            }
+        }
+    }
+
+    private void addNumber() {
+        while (isDigit(peek())) {
+            advance();
+        }
+        if (peek() == '.' && isDigit(lookAhead())) {
+            advance();
+            while (isDigit(peek())) advance();
+        }
+        addToken(TokenType.NUMBER);
+    }
+
+    private void addToken(TokenType tokenType) {
+        if (tokenType == null) return;
+        this.tokens.add(tokenType, this.startIdx, this.currentIdx - this.startIdx, this.line);
+    }
+
+    private boolean currentMatch(char expected) {
+        if (isEnd() || src.get(currentIdx) != expected) {
+            return false;
+        }
+        currentIdx++;
+        return true;
+    }
+
+    private byte advance() {
+        return src.get(currentIdx++);
+    }
+
+    private byte peek() {
+        if (isEnd()) return 0;
+        return src.get(currentIdx);
+    }
+
+    private byte lookAhead() {
+        if (currentIdx + 1 >= sourceSize) return 0;
+        return src.get(currentIdx + 1);
+    }
+
+    private boolean isEnd() {
+        return currentIdx >= sourceSize;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlpha(byte c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    /**
+     * Decodes the (possibly multi-byte) character starting at index, for error messages.
+     */
+    private String characterAt(int index) {
+        int lead = src.get(index) & 0xff;
+        int length = lead < 0x80 ? 1 : lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : lead >= 0xc0 ? 2 : 1;
+        byte[] bytes = new byte[Math.min(length, sourceSize - index)];
+        src.get(index, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
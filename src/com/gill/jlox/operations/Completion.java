@@ -0,0 +1,37 @@
+package com.gill.jlox.operations;
+
+/**
+ * How a statement finished executing. The Evaluator hands this back up through
+ * executeBlock, if and while, instead of throwing to unwind:
+ *  - NORMAL: carry on with the next statement.
+ *  - BREAK : leave the innermost enclosing loop.
+ *  - RETURN: leave the current function with `value`.
+ *  - TAIL_CALL: leave the current function, and have LoxFunction call the function
+ *    the Evaluator has set up in its place, see Evaluator.tailCall.
+ */
+public final class Completion {
+
+    public enum Kind { NORMAL, BREAK, RETURN, TAIL_CALL }
+
+    public static final Completion NORMAL = new Completion(Kind.NORMAL, null);
+    public static final Completion BREAK = new Completion(Kind.BREAK, null);
+    public static final Completion TAIL_CALL = new Completion(Kind.TAIL_CALL, null);
+    // `return;` has nothing to carry, so it can be shared as well.
+    private static final Completion RETURN_NIL = new Completion(Kind.RETURN, null);
+
+    public final Kind kind;
+    public final Object value;
+
+    private Completion(Kind kind, Object value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    public static Completion returning(Object value) {
+        return value == null ? RETURN_NIL : new Completion(Kind.RETURN, value);
+    }
+
+    public boolean isNormal() {
+        return this == NORMAL;
+    }
+}
@@ -1,20 +1,22 @@
 package com.gill.jlox.operations;
 
 import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.Operators;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
 import com.gill.jlox.tokens.TokenType;
 import com.gill.jlox.ast.expressions.*;
 import com.gill.jlox.ast.statements.*;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class Evaluator implements BaseVisitor, BaseStmtVisitor {
 
     public Environment globalEnv = new Environment();
     public Environment env = globalEnv;
-    private boolean insideLoop = false;
+    // The call a Completion.TAIL_CALL hands to LoxFunction: the function, and its frame with the arguments bound.
+    LoxFunction tailFunction;
+    Environment tailFrame;
 
     public Evaluator() {
         BuiltIns builtIns = new BuiltIns();
@@ -27,21 +29,25 @@ public class Evaluator implements BaseVisitor, BaseStmtVisitor {
         return expr.accept(this);
     }
 
-    public Void execute(BaseStmt stmt) throws RuntimeError, BreakError {
-        stmt.accept(this);
-        return null;
+    public Completion execute(BaseStmt stmt) throws RuntimeError {
+        return (Completion) stmt.accept(this);
     }
 
     public Object evaluate(List<BaseStmt> statements) throws RuntimeError {
         Object lastResult = null;
         for (BaseStmt statement : statements) {
             try {
-                lastResult = statement.accept(this);
+                // Statements only report how they completed; keep the value of a
+                // top-level expression around for the REPL.
+                if (statement instanceof ExprStmt exprStmt) {
+                    lastResult = evaluate(exprStmt.expression);
+                } else {
+                    execute(statement);
+                    lastResult = null;
+                }
             } catch (RuntimeError runtimeError) {
                 // throw new RuntimeException(runtimeError);
                 System.err.println(runtimeError.getMessage());
-            } catch (BreakError e) {
-                throw new RuntimeException(e);
             }
         }
         return lastResult;
@@ -54,23 +60,11 @@ public class Evaluator implements BaseVisitor, BaseStmtVisitor {
     @Override
     public Object visitUnary(Unary expr) throws RuntimeError {
         Object right = evaluate(expr.right);
-        switch (expr.operator.tokenType) {
-            case BANG -> {
-                return !isTruthy(right);
-            }
-            case MINUS -> {
-                checkNumber(right);
-                return -1 * Double.parseDouble(right.toString());
-            }
-        }
-        // This should be unreachable
-        return null;
+        return UnarySpecialization.execute(expr, right);
     }
 
     private boolean isTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (boolean) object;
-        return true;
+        return Operators.isTruthy(object);
     }
 
     @Override
@@ -82,86 +76,37 @@ public class Evaluator implements BaseVisitor, BaseStmtVisitor {
     public Object visitBinary(Binary binary) throws RuntimeError {
         Object lhsResult = evaluate(binary.left);
         Object rhsResult = evaluate(binary.right);
-        Token operator = binary.operator;
-
-        switch (operator.tokenType) {
-            case PLUS :
-                if (isDouble(lhsResult) && isDouble(rhsResult))
-                    return Double.parseDouble(lhsResult.toString()) +
-                            Double.parseDouble(rhsResult.toString());
-                else if (isString(lhsResult) && isString(rhsResult))
-                    return (String) lhsResult + (String) rhsResult;
-                else return null;
-            case MINUS:
-                if (isDouble(lhsResult) && isDouble(rhsResult))
-                    return Double.parseDouble(lhsResult.toString()) -
-                            Double.parseDouble(rhsResult.toString());
-            case STAR:
-                if (isDouble(lhsResult) && isDouble(rhsResult))
-                    return Double.parseDouble(lhsResult.toString()) *
-                            Double.parseDouble(rhsResult.toString());
-            case PERCENT:
-                if (isDouble(lhsResult) && isDouble(rhsResult)) {
-                    lhsResult = lhsResult.toString();
-                    rhsResult = rhsResult.toString();
-                    if (((String) lhsResult).contains(".")) {
-                        lhsResult = ((String) lhsResult).split("\\.")[0];
-                    }
-                    if (((String) rhsResult).contains(".")) {
-                        rhsResult = ((String) rhsResult).split("\\.")[0];
-                    }
-                    return Integer.parseInt(lhsResult.toString()) %
-                            Integer.parseInt(rhsResult.toString());
-                }
-            case SLASH: {
-                checkZeroDivision(rhsResult);
-                if (isDouble(lhsResult) && isDouble(rhsResult))
-                    return Double.parseDouble(lhsResult.toString()) /
-                            Double.parseDouble(rhsResult.toString());
-                else return null;
-            }
-            case GREATER:
-                checkNumber(lhsResult, rhsResult);
-                return Double.parseDouble(lhsResult.toString()) >
-                        Double.parseDouble(rhsResult.toString());
-            case GREATER_EQUAL:
-                checkNumber(lhsResult, rhsResult);
-                return Double.parseDouble(lhsResult.toString()) >=
-                        Double.parseDouble(rhsResult.toString());
-            case LESS:
-                checkNumber(lhsResult, rhsResult);
-                return Double.parseDouble(lhsResult.toString()) <
-                        Double.parseDouble(rhsResult.toString());
-            case LESS_EQUAL:
-                checkNumber(lhsResult, rhsResult);
-                return Double.parseDouble(lhsResult.toString()) <=
-                        Double.parseDouble(rhsResult.toString());
-            case EQUAL_EQUAL:
-                if (isDouble(lhsResult) && isDouble(rhsResult))
-                    return isEqual(Double.parseDouble(lhsResult.toString()),
-                                   Double.parseDouble(rhsResult.toString()));
-                else if (isString(lhsResult) && isString(rhsResult))
-                    return isEqual(lhsResult.toString(), rhsResult.toString());
-            case BANG_EQUAL:
-                return !isEqual(lhsResult, rhsResult);
-            default:
-                throw new RuntimeError("Unsupported Operation: " + operator.lexeme);
-        }
+        return BinarySpecialization.execute(binary, lhsResult, rhsResult);
     }
 
     @Override
     public Object visitVarExpr(VarExpr varExpr) throws RuntimeError {
-        return lookupVariable(varExpr.name, varExpr);
+        return lookupVariable(varExpr.name, varExpr.depth, varExpr.slot);
     }
 
-    private Object lookupVariable(Token name, VarExpr varExpr) throws RuntimeError {
+    private Object lookupVariable(Token name, int depth, int slot) throws RuntimeError {
+        if (depth >= 0) {
+            return env.getAt(depth, slot);
+        } else if (depth == Resolver.GLOBAL) {
+            return globalEnv.getEnvByToken(name);
+        }
         return env.getEnvByToken(name);
     }
 
+    private void assignVariable(Token name, int depth, int slot, Object value) throws RuntimeError {
+        if (depth >= 0) {
+            env.assignAt(depth, slot, value);
+        } else if (depth == Resolver.GLOBAL) {
+            globalEnv.assign(name, value);
+        } else {
+            env.assign(name, value);
+        }
+    }
+
     @Override
     public Object visitAssignExpr(AssignExpr assignExpr) throws RuntimeError {
         Object value = evaluate(assignExpr.value);
-        env.assign(assignExpr.name, value);
+        assignVariable(assignExpr.name, assignExpr.depth, assignExpr.slot, value);
         return value;
     }
 
@@ -192,51 +137,68 @@ public class Evaluator implements BaseVisitor, BaseStmtVisitor {
 
     @Override
     public Object visitIncrement(Increment increment) throws RuntimeError {
-        Object result = evaluate(increment.expr);
-        if (isDouble(result)) {
-            Double increased = Double.parseDouble(result.toString()) + 1;
-            env.assign(increment.operandToken, increased);
-            return increased;
-        }
-        throw new RuntimeError("Invalid data type for Increment operator");
+        Object increased = Operators.increment(evaluate(increment.expr));
+        assignVariable(increment.operandToken, increment.depth, increment.slot, increased);
+        return increased;
     }
 
     @Override
     public Object visitDecrement(Decrement decrement) throws RuntimeError {
-        Object result = evaluate(decrement.expr);
-        if (isDouble(result)) {
-            Double decreased = Double.parseDouble(result.toString()) - 1;
-            env.assign(decrement.token, decreased);
-            return decreased;
-        }
-        throw new RuntimeError("Invalid data type for Increment operator");
+        Object decreased = Operators.decrement(evaluate(decrement.expr));
+        assignVariable(decrement.token, decrement.depth, decrement.slot, decreased);
+        return decreased;
     }
 
     @Override
     public Object visitCallExpr(FunCall funCall) throws RuntimeError {
-        Object callee = evaluate(funCall.callee);
-        if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError("Can only call functions and classes");
-        }
-        List<Object> evaluatedArgs = new ArrayList<>();
-        int i = 0;
-        for (Object arg : funCall.args) {
-            if (arg instanceof LoxCallable callableArg) {
-                LoxFunction func = (LoxFunction) callee;
-                Token thisArg = (Token) func.declaration.parameters.get(i);
-                env.define(thisArg.lexeme, callableArg);
-            } else {
-                evaluatedArgs.add(evaluate((BaseExpr) arg));
+        Object callee = evaluateCallee(funCall);
+        List args = funCall.args;
+        int argCount = args.size();
+        CallSiteCache cache = funCall.cache;
+        // Arguments are evaluated straight into the fixed-arity entry points, no argument list.
+        switch (argCount) {
+            case 0 -> {
+                return cache.validate(callee, 0).call0(this);
+            }
+            case 1 -> {
+                Object arg0 = evaluate((BaseExpr) args.get(0));
+                return cache.validate(callee, 1).call1(this, arg0);
+            }
+            case 2 -> {
+                Object arg0 = evaluate((BaseExpr) args.get(0));
+                Object arg1 = evaluate((BaseExpr) args.get(1));
+                return cache.validate(callee, 2).call2(this, arg0, arg1);
+            }
+            case 3 -> {
+                Object arg0 = evaluate((BaseExpr) args.get(0));
+                Object arg1 = evaluate((BaseExpr) args.get(1));
+                Object arg2 = evaluate((BaseExpr) args.get(2));
+                return cache.validate(callee, 3).call3(this, arg0, arg1, arg2);
+            }
+            default -> {
+                Object[] evaluatedArgs = new Object[argCount];
+                for (int i = 0; i < argCount; i++) {
+                    evaluatedArgs[i] = evaluate((BaseExpr) args.get(i));
+                }
+                return cache.validate(callee, argCount).callN(this, evaluatedArgs);
             }
-            i++;
         }
-        LoxCallable function = (LoxCallable) callee;
-        if (!function.isVariadic() && evaluatedArgs.size() != function.arity()) {
-            int expected = function.arity();
-            int got = evaluatedArgs.size();
-            throw new RuntimeError("Expected " + expected + " arguments but got " + got);
+    }
+
+    /**
+     * A global callee (`fib(n - 1)` calling itself) is looked up by name only the first
+     * time, after that the site reads the global's Binding.
+     */
+    private Object evaluateCallee(FunCall funCall) throws RuntimeError {
+        if (funCall.callee instanceof VarExpr varExpr && varExpr.depth == Resolver.GLOBAL) {
+            CallSiteCache cache = funCall.cache;
+            if (cache.globals != globalEnv) {
+                cache.global = globalEnv.binding(varExpr.name);
+                cache.globals = globalEnv;
+            }
+            return cache.global.value;
         }
-        return function.call(this, evaluatedArgs);
+        return evaluate(funCall.callee);
     }
 
     @Override
@@ -246,145 +208,155 @@ public class Evaluator implements BaseVisitor, BaseStmtVisitor {
         return lambdaFn;
     }
 
-    private boolean isString(Object object) {
-        return object instanceof String;
-    }
-
-    private boolean isDouble(Object object) {
-        try {
-            Double.parseDouble(String.valueOf(object));
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
-    }
-
-    private boolean makeTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (boolean) object;
-        return true;
-    }
-
-    private boolean isEqual(Object lhsResult, Object rhsResult) {
-        if (lhsResult == null && rhsResult == null) return true;
-        if (lhsResult == null) return false;
-        return lhsResult.equals(rhsResult);
-    }
-
-    private void checkNumber(Object lhsResult) {
-        Double.parseDouble(lhsResult.toString());
-    }
-    private void checkNumber(Object lhsResult, Object rhsResult) {
-        Double.parseDouble(lhsResult.toString());
-        Double.parseDouble(rhsResult.toString());
-    }
-
-    private void checkZeroDivision(Object rhsResult) throws RuntimeError {
-        if (Double.parseDouble(rhsResult.toString()) == 0) {
-            throw new RuntimeError("Unsupported Operation: Division by Zero");
-        }
-    }
-
     @Override
-    public Object visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
-        return evaluate(exprStmt.expression);
+    public Completion visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
+        evaluate(exprStmt.expression);
+        return Completion.NORMAL;
     }
 
     @Override
-    public void visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
+    public Completion visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
         Object evaluate = evaluate(printStmt.expression);
         System.out.println(evaluate);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(VarStmt varStmt) throws RuntimeError {
-        env.define(varStmt.name.lexeme, evaluate(varStmt.initializer));
-        return null;
+    public Completion visitVarStmt(VarStmt varStmt) throws RuntimeError {
+        // `var a;` declares a nil variable.
+        Object value = varStmt.initializer != null ? evaluate(varStmt.initializer) : null;
+        if (varStmt.slot >= 0) {
+            env.defineAt(varStmt.slot, varStmt.hoisted ? null : varStmt.name.lexeme, value);
+        } else {
+            env.define(varStmt.name.lexeme, value);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlockStmt(BlockStmt blockStmt) throws RuntimeError, BreakError {
-        executeBlock(blockStmt.statements, new Environment(env));
-        return null;
+    public Completion visitBlockStmt(BlockStmt blockStmt) throws RuntimeError {
+        if (blockStmt.slotCount == 0) {
+            // Nothing of its own to keep (see Resolver.visitBlockStmt), so no Environment either.
+            return executeStatements(blockStmt.statements);
+        }
+        Environment blockEnv = blockStmt.slotCount >= 0
+                ? new Environment(env, blockStmt.slotCount)
+                : new Environment(env);
+        return executeBlock(blockStmt.statements, blockEnv);
     }
 
     @Override
-    public Object visitIfStmt(IfStmt ifStmt) throws RuntimeError, BreakError {
+    public Completion visitIfStmt(IfStmt ifStmt) throws RuntimeError {
         Object condResult = evaluate(ifStmt.condition);
         // TODO: Look into the dangling else problem.
         // Our parser conveniently solves it already : if eagerly looks for an else
         // before returning.
         if (isTruthy(condResult)) {
-            execute(ifStmt.thenBranch);
+            return execute(ifStmt.thenBranch);
         } else if (ifStmt.elseBranch != null) {
-            execute(ifStmt.elseBranch);
+            return execute(ifStmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
-        insideLoop = true;
-        BlockStmt body = (BlockStmt) whileStmt.body;
-        while (isTruthy(evaluate(whileStmt.condition))) {
-            if (insideLoop) {
-                try {
-                    execute(body);
-                } catch (BreakError e) {
-                    break;
-                }
-            }
-        }
-        insideLoop = false;
-        return null;
+    public Completion visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
+        return executeLoop(whileStmt.condition, whileStmt.body);
     }
 
     @Override
-    public Object visitForStmt(ForStmt forStmt) throws RuntimeError, BreakError {
-        while (isTruthy(evaluate(forStmt.condition))) {
-            execute(forStmt.body);
+    public Completion visitForStmt(ForStmt forStmt) throws RuntimeError {
+        return executeLoop(forStmt.condition, forStmt.body);
+    }
+
+    private Completion executeLoop(BaseExpr condition, BaseStmt body) throws RuntimeError {
+        while (isTruthy(evaluate(condition))) {
+            Completion completion = execute(body);
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (!completion.isNormal()) {
+                // A return inside the loop keeps unwinding to the function.
+                return completion;
+            }
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Object visitBreakStmt(BreakStmt breakStmt) throws RuntimeError, BreakError {
-        insideLoop = false;
-        throw new BreakError("Got a break!");
+    public Completion visitBreakStmt(BreakStmt breakStmt) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Object visitFunStmt(FunStmt funStmt) throws RuntimeError {
+    public Completion visitFunStmt(FunStmt funStmt) throws RuntimeError {
         // Takes the syntax node and converts that into the function's
         // runtime representation (LoxFunction).
         LoxFunction function = new LoxFunction(funStmt, env, false);
         // Function declarations also bind the resulting object
         // into a new variable.
-        env.define(funStmt.funIdentifier.lexeme, function);
-        return null;
+        if (funStmt.slot >= 0) {
+            env.defineAt(funStmt.slot, funStmt.funIdentifier.lexeme, function);
+        } else {
+            env.define(funStmt.funIdentifier.lexeme, function);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Object visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+    public Completion visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+        if (returnStmt.tailCall != null) {
+            return tailCall(returnStmt.tailCall);
+        }
         Object value = null;
         if (returnStmt.returnValue != null) {
             value = evaluate(returnStmt.returnValue);
         }
-        // We use Exceptions to unwind the call stack and go to the end
-        // of the function.
-        throw new ReturnObjectException(value);
+        // Hand the value back up through the enclosing blocks/loops to LoxFunction.call,
+        // which stops at the first non-NORMAL completion.
+        return Completion.returning(value);
+    }
+
+    /**
+     * `return f(x)` in a function: evaluates the callee and arguments as visitCallExpr would,
+     * but instead of calling a LoxFunction here, one more Java frame on top of the caller's,
+     * leaves it to the LoxFunction.call running the caller. That one unwinds the caller and
+     * runs the callee in a loop, so a chain of tail calls runs in constant stack.
+     */
+    private Completion tailCall(FunCall funCall) throws RuntimeError {
+        Object callee = evaluateCallee(funCall);
+        List args = funCall.args;
+        Object[] evaluatedArgs = new Object[args.size()];
+        for (int i = 0; i < evaluatedArgs.length; i++) {
+            evaluatedArgs[i] = evaluate((BaseExpr) args.get(i));
+        }
+        LoxCallable function = funCall.cache.validate(callee, evaluatedArgs.length);
+        if (function instanceof LoxFunction loxFunction) {
+            tailFrame = loxFunction.frame(evaluatedArgs);
+            tailFunction = loxFunction;
+            return Completion.TAIL_CALL;
+        }
+        // Built-ins don't recurse back into Lox code, nothing to gain.
+        return Completion.returning(function.callN(this, evaluatedArgs));
     }
 
-    public void executeBlock(List<BaseStmt> statements, Environment newEnv) throws RuntimeError, BreakError {
+    public Completion executeBlock(List<BaseStmt> statements, Environment newEnv) throws RuntimeError {
         Environment prev = this.env;
         try {
             this.env = newEnv;
-            for (BaseStmt stmt : statements) {
-                execute(stmt);
-            }
+            return executeStatements(statements);
         } finally {
             // Restore the environment
             this.env = prev;
         }
     }
+
+    private Completion executeStatements(List<BaseStmt> statements) throws RuntimeError {
+        for (BaseStmt stmt : statements) {
+            Completion completion = execute(stmt);
+            if (!completion.isNormal()) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
 }
@@ -0,0 +1,797 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.ast.expressions.*;
+import com.gill.jlox.ast.statements.*;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which calls the Optimizer may replace with the body of the function called,
+ * and builds the replacement. A call `f(x, 2)` to
+ *
+ *   fun f(a, b) { return a * a + b; }
+ *
+ * becomes `x * x + 2`: no FunCall, no Environment, no LoxFunction.call.
+ *
+ * Only a call which certainly reaches that very function, and can't tell the difference,
+ * is inlined:
+ *  - f is declared once, with `fun` at the top level, and nothing in the program declares
+ *    another f anywhere or assigns to f. So every `f` refers to this function.
+ *  - The call comes after the declaration in the source. At the top level that means the
+ *    declaration has run by then, and so has it for any function declared further down.
+ *  - The body is a single `return` of a pure expression (literals, variables, operators -
+ *    no calls or assignments) of at most BUDGET nodes.
+ *  - The other names the body reads are never declared in a local scope, so they mean the
+ *    same global wherever the body is spliced in.
+ *  - The arguments are literals or variables, and there is one for every parameter.
+ *    Parameters are replaced by their argument, which makes reading it twice the same as
+ *    reading the parameter twice: nothing in a pure body can change it in between.
+ *    A variable has to be certainly defined at the call, see isDefined().
+ *
+ * A function with a longer body can still be spliced into a statement which does nothing
+ * but call it: `f(x);`, `v = f(x);`, `print f(x);`, `var v = f(x);` in a block, and
+ * `return f(x);`. For `fun f(a) { var t = a * 2; if (t > 9) return 9; return t; }`,
+ * `print f(x);` becomes
+ *
+ *   var a#1 = x; var f#2; var t#3 = a#1 * 2; if (t#3 > 9) f#2 = 9; else { f#2 = t#3; } print f#2;
+ *
+ * in place, or wrapped in a block at the top level and where a single statement is
+ * expected. The `#` names can't clash with anything in the source. On top of the rules
+ * above, see Splice:
+ *  - The body is at most BUDGET nodes, statements included, and declares no function or
+ *    lambda: those would capture the caller's environment instead of a call's own.
+ *  - Every `return` is the last thing on its path through the body, possibly after
+ *    `if (c) return a;` has taken the rest of the body into its else branch.
+ *  - The body doesn't call the function itself, and nothing spliced into a body is
+ *    spliced again while that body is being spliced, so mutual recursion stops too.
+ *  - Nothing in the program calls env(), which would show the renamed variables.
+ * Arguments are evaluated into the parameters' variables in order, as the call would,
+ * so they can be any expression.
+ *
+ * The whole program has to be seen for this: the Optimizer only inlines when it gets a
+ * whole script (not a REPL line, not a --stream declaration), and not while --lazy-parse
+ * has function bodies that are not parsed yet.
+ */
+class Inliner {
+
+    // Largest body, in AST nodes, that is copied into a call site.
+    static final int BUDGET = 24;
+
+    private final Survey survey;
+    // Functions whose declaration the Optimizer has gone past, see declared().
+    private final Map<String, Candidate> available = new HashMap<>();
+    // Names declared so far, innermost scope first; the last one is the globals.
+    private final Deque<Set<String>> scopes = new ArrayDeque<>();
+    private final Set<String> globals = new HashSet<>();
+    // Function bodies we're in.
+    private int functions = 0;
+    // Functions whose body is being spliced in, innermost first.
+    private final Deque<String> splicing = new ArrayDeque<>();
+    // Suffix of the last name made up by a Splice.
+    private int renamed = 0;
+
+    private static class Candidate {
+        final FunStmt declaration;
+        // The expression the body returns, for a call anywhere; or null, and only the
+        // statements are spliced into a call statement.
+        final BaseExpr body;
+        final List<BaseStmt> statements;
+        final int arity;
+        final Map<String, Integer> parameters = new HashMap<>();
+
+        Candidate(FunStmt declaration, BaseExpr body, List<BaseStmt> statements) {
+            this.declaration = declaration;
+            this.body = body;
+            this.statements = statements;
+            this.arity = declaration.parameters.size();
+        }
+    }
+
+    private Inliner(Survey survey) {
+        this.survey = survey;
+        this.scopes.push(globals);
+    }
+
+    static Inliner survey(List<BaseStmt> program) throws RuntimeError {
+        Survey survey = new Survey();
+        for (BaseStmt statement : program) {
+            survey.declare(statement);
+        }
+        for (BaseStmt statement : program) {
+            survey.visit(statement);
+        }
+        return new Inliner(survey);
+    }
+
+    /**
+     * Called by the Optimizer for each top-level statement it has gone past, already
+     * optimized: calls from here on may be replaced by the function's body.
+     */
+    void declared(BaseStmt statement) throws RuntimeError {
+        if (statement instanceof FunStmt funStmt && !survey.incomplete) {
+            Candidate candidate = candidate(funStmt);
+            if (candidate != null) {
+                available.put(funStmt.funIdentifier.lexeme, candidate);
+            }
+        }
+    }
+
+    private Candidate candidate(FunStmt funStmt) throws RuntimeError {
+        String name = funStmt.funIdentifier.lexeme;
+        if (survey.topLevel.getOrDefault(name, 0) != 1 || survey.local.contains(name) || survey.assigned.contains(name)) {
+            return null;
+        }
+        List<BaseStmt> body = funStmt.body();
+        BaseExpr returned = body.size() == 1 && body.get(0) instanceof ReturnStmt returnStmt ? returnStmt.returnValue : null;
+        Candidate candidate = new Candidate(funStmt, returned, body);
+        for (int i = 0; i < funStmt.parameters.size(); i++) {
+            if (candidate.parameters.put(((Token) funStmt.parameters.get(i)).lexeme, i) != null) {
+                // `fun f(a, a)`: the last one wins at runtime; not worth getting right here.
+                return null;
+            }
+        }
+        if (returned != null) {
+            int size = size(returned, candidate, survey);
+            if (size >= 0 && size <= BUDGET) {
+                return candidate;
+            }
+        }
+        if (survey.readsEnv) {
+            return null;
+        }
+        // A trial run: the copy for each call site comes out the same.
+        Splice splice = new Splice(candidate);
+        try {
+            splice.body();
+        } catch (NotSpliceable e) {
+            return null;
+        }
+        return splice.size <= BUDGET ? new Candidate(funStmt, null, body) : null;
+    }
+
+    /**
+     * Counts the nodes of a pure expression, or returns -1 if it is not pure or reads a
+     * name which might not be the global one.
+     */
+    private static int size(BaseExpr expr, Candidate candidate, Survey survey) {
+        if (expr instanceof Literal) {
+            return 1;
+        }
+        if (expr instanceof VarExpr varExpr) {
+            String name = varExpr.name.lexeme;
+            return candidate.parameters.containsKey(name) || !survey.local.contains(name) ? 1 : -1;
+        }
+        if (expr instanceof Grouping grouping) {
+            return plus(1, size(grouping.expr, candidate, survey));
+        }
+        if (expr instanceof Unary unary) {
+            return plus(1, size(unary.right, candidate, survey));
+        }
+        if (expr instanceof Binary binary) {
+            return plus(size(binary.left, candidate, survey), plus(1, size(binary.right, candidate, survey)));
+        }
+        if (expr instanceof LogicalExpr logical) {
+            return plus(size(logical.lhs, candidate, survey), plus(1, size(logical.rhs, candidate, survey)));
+        }
+        return -1;
+    }
+
+    private static int plus(int a, int b) {
+        return a < 0 || b < 0 ? -1 : a + b;
+    }
+
+    /**
+     * The expression to evaluate instead of funCall, already folded by optimizer, or null
+     * if it has to stay a call.
+     */
+    BaseExpr inline(FunCall funCall, Optimizer optimizer) throws RuntimeError {
+        if (available.isEmpty() || !(funCall.callee instanceof VarExpr callee)) {
+            return null;
+        }
+        Candidate candidate = available.get(callee.name.lexeme);
+        if (candidate == null || candidate.body == null || funCall.args.size() != candidate.arity) {
+            // Leave the arity error to the call.
+            return null;
+        }
+        for (Object arg : funCall.args) {
+            if (!(arg instanceof Literal || arg instanceof VarExpr varExpr && isDefined(varExpr.name.lexeme))) {
+                return null;
+            }
+        }
+        // With the arguments in place the body may fold further, eg. `(b - a) * t` with 10 and 0 for b and a.
+        return optimizer.optimize(copy(candidate.body, candidate, funCall.args));
+    }
+
+    /**
+     * The statements to run instead of statement, a call statement (see the class comment),
+     * or null if it stays as it is. The body in there is already optimized; at the top level
+     * it all comes in one block, so it doesn't declare globals.
+     */
+    List<BaseStmt> splice(BaseStmt statement, Optimizer optimizer) throws RuntimeError {
+        if (available.isEmpty()) {
+            return null;
+        }
+        boolean global = scopes.peek() == globals;
+        BaseExpr call = null;
+        if (statement instanceof ExprStmt exprStmt) {
+            call = exprStmt.expression instanceof AssignExpr assignExpr ? assignExpr.value : exprStmt.expression;
+        } else if (statement instanceof PrintStmt printStmt) {
+            call = printStmt.expression;
+        } else if (statement instanceof VarStmt varStmt && !global) {
+            call = varStmt.initializer;
+        } else if (statement instanceof ReturnStmt returnStmt && functions > 0) {
+            call = returnStmt.returnValue;
+        }
+        if (!(call instanceof FunCall funCall) || !(funCall.callee instanceof VarExpr callee)) {
+            return null;
+        }
+        String name = callee.name.lexeme;
+        Candidate candidate = available.get(name);
+        if (candidate == null || funCall.args.size() != candidate.arity || splicing.contains(name)) {
+            return null;
+        }
+        Splice splice = new Splice(candidate);
+        List<BaseStmt> body;
+        try {
+            body = splice.body();
+        } catch (NotSpliceable e) {
+            return null;
+        }
+
+        if (global) {
+            beginScope();
+        }
+        List<BaseStmt> statements = new ArrayList<>();
+        for (int i = 0; i < candidate.arity; i++) {
+            Token parameter = splice.parameters.get(i);
+            statements.add(new VarStmt(parameter, (BaseExpr) funCall.args.get(i)));
+            define(parameter.lexeme);
+        }
+        statements.add(new VarStmt(splice.result, null));
+        define(splice.result.lexeme);
+        splicing.push(name);
+        statements.addAll(optimizer.optimizeSpliced(body));
+        splicing.pop();
+        VarExpr result = new VarExpr(splice.result);
+        if (statement instanceof ExprStmt exprStmt && exprStmt.expression instanceof AssignExpr assignExpr) {
+            statements.add(new ExprStmt(new AssignExpr(assignExpr.name, result)));
+        } else if (statement instanceof PrintStmt) {
+            statements.add(new PrintStmt(result));
+        } else if (statement instanceof VarStmt varStmt) {
+            statements.add(new VarStmt(varStmt.name, result));
+        } else if (statement instanceof ReturnStmt) {
+            statements.add(new ReturnStmt(result));
+        }
+        if (global) {
+            endScope();
+            List<BaseStmt> block = new ArrayList<>(1);
+            block.add(new BlockStmt(statements));
+            return block;
+        }
+        return statements;
+    }
+
+    /*
+     * The Optimizer reports the scopes it goes through, so inline() can tell whether an
+     * argument variable certainly exists where the call is. The call would fail on an
+     * undefined one before doing anything else; spliced into the body, the error could come
+     * from somewhere else - the tree-walker even reports it differently inside a Binary.
+     */
+
+    void beginScope() {
+        scopes.push(new HashSet<>());
+    }
+
+    void endScope() {
+        scopes.pop();
+    }
+
+    void beginFunction(List<?> parameters) {
+        functions++;
+        beginScope();
+        for (Object parameter : parameters) {
+            define(((Token) parameter).lexeme);
+        }
+    }
+
+    void endFunction() {
+        endScope();
+        functions--;
+    }
+
+    void define(String name) {
+        scopes.peek().add(name);
+    }
+
+    void define(String name, BaseExpr initializer) {
+        // The tree-walker carries on with the next top-level statement when one fails, so
+        // a global whose initializer threw doesn't exist. A local's can't be reached then.
+        if (scopes.peek() != globals || initializer == null || initializer instanceof Literal) {
+            define(name);
+        }
+    }
+
+    /**
+     * A local in scope is there for sure. So is a global declared further up, as long as
+     * we're not in a function body: the function might be called before that declaration runs.
+     */
+    private boolean isDefined(String name) {
+        for (Set<String> scope : scopes) {
+            if (scope == globals) {
+                return functions == 0 && scope.contains(name);
+            }
+            if (scope.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A fresh copy of the body, so the Resolver and the engines annotate every call site separately.
+    private static BaseExpr copy(BaseExpr expr, Candidate candidate, List<?> args) {
+        if (expr instanceof Literal literal) {
+            return new Literal(literal.value);
+        }
+        if (expr instanceof VarExpr varExpr) {
+            Integer parameter = candidate.parameters.get(varExpr.name.lexeme);
+            if (parameter == null) {
+                return new VarExpr(varExpr.name);
+            }
+            Object arg = args.get(parameter);
+            return arg instanceof Literal literal ? new Literal(literal.value) : new VarExpr(((VarExpr) arg).name);
+        }
+        if (expr instanceof Grouping grouping) {
+            return new Grouping(copy(grouping.expr, candidate, args));
+        }
+        if (expr instanceof Unary unary) {
+            return new Unary(unary.operator, copy(unary.right, candidate, args));
+        }
+        if (expr instanceof Binary binary) {
+            return new Binary(copy(binary.left, candidate, args), binary.operator, copy(binary.right, candidate, args));
+        }
+        LogicalExpr logical = (LogicalExpr) expr;
+        return new LogicalExpr(copy(logical.lhs, candidate, args), logical.operator, copy(logical.rhs, candidate, args));
+    }
+
+    private static final class NotSpliceable extends Exception {
+        NotSpliceable() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A copy of a candidate's body for one call site. Every variable the body declares,
+     * parameters included, gets a new name, scope by scope, and every `return v;` becomes
+     * `result = v;`. Throws NotSpliceable for anything the class comment rules out. A
+     * name the body reads before declaring it in the same scope counts as a global one,
+     * and a local somewhere else, so that is ruled out too.
+     */
+    private final class Splice {
+        final Candidate candidate;
+        final List<Token> parameters = new ArrayList<>();
+        final Token result;
+        // Nodes copied so far.
+        int size = 0;
+        // Names declared so far, innermost scope first, and what they are called now.
+        private final Deque<Map<String, Token>> names = new ArrayDeque<>();
+        // Loops we're in; a `break` outside them is not the body's to take along.
+        private int loops = 0;
+
+        Splice(Candidate candidate) {
+            this.candidate = candidate;
+            names.push(new HashMap<>());
+            // The parameters are in the same scope as the body's own variables, as in a call.
+            for (Object parameter : candidate.declaration.parameters) {
+                parameters.add(declare((Token) parameter));
+            }
+            result = rename(candidate.declaration.funIdentifier);
+        }
+
+        List<BaseStmt> body() throws NotSpliceable {
+            return tail(candidate.statements);
+        }
+
+        private Token rename(Token name) {
+            return new Token((name.lexeme + "#" + ++renamed).intern(), name.tokenType, null, name.line);
+        }
+
+        private Token declare(Token name) {
+            // `var a` again in the same scope is the same variable.
+            return names.peek().computeIfAbsent(name.lexeme, lexeme -> rename(name));
+        }
+
+        private Token name(Token name) throws NotSpliceable {
+            for (Map<String, Token> scope : names) {
+                Token renamed = scope.get(name.lexeme);
+                if (renamed != null) {
+                    return renamed;
+                }
+            }
+            if (survey.local.contains(name.lexeme) || name.lexeme.equals(candidate.declaration.funIdentifier.lexeme)) {
+                throw new NotSpliceable();
+            }
+            return name;
+        }
+
+        // Statements which end the body, so their returns can be assignments to result.
+        private List<BaseStmt> tail(List<BaseStmt> statements) throws NotSpliceable {
+            List<BaseStmt> copied = new ArrayList<>(statements.size());
+            for (int i = 0; i < statements.size(); i++) {
+                BaseStmt stmt = statements.get(i);
+                List<BaseStmt> rest = statements.subList(i + 1, statements.size());
+                if (!returns(stmt)) {
+                    copied.add(copy(stmt));
+                } else if (rest.isEmpty()) {
+                    copied.add(tail(stmt));
+                } else if (stmt instanceof IfStmt ifStmt && alwaysReturns(ifStmt.thenBranch)) {
+                    // `if (c) return a; rest` does what `if (c) return a; else { rest }` does.
+                    copied.add(tailIf(ifStmt.condition, ifStmt.thenBranch, followedBy(ifStmt.elseBranch, rest)));
+                    break;
+                } else if (stmt instanceof IfStmt ifStmt && ifStmt.elseBranch != null && alwaysReturns(ifStmt.elseBranch)) {
+                    copied.add(tailIf(ifStmt.condition, followedBy(ifStmt.thenBranch, rest), ifStmt.elseBranch));
+                    break;
+                } else {
+                    throw new NotSpliceable();
+                }
+            }
+            return copied;
+        }
+
+        private BaseStmt tail(BaseStmt stmt) throws NotSpliceable {
+            if (!returns(stmt)) {
+                return copy(stmt);
+            }
+            size++;
+            if (stmt instanceof ReturnStmt returnStmt) {
+                BaseExpr value = returnStmt.returnValue != null ? copy(returnStmt.returnValue) : new Literal(null);
+                return new ExprStmt(new AssignExpr(result, value));
+            }
+            if (stmt instanceof IfStmt ifStmt) {
+                return tailIf(ifStmt.condition, ifStmt.thenBranch, ifStmt.elseBranch);
+            }
+            if (stmt instanceof BlockStmt blockStmt) {
+                names.push(new HashMap<>());
+                BlockStmt copied = new BlockStmt(tail(blockStmt.statements));
+                names.pop();
+                return copied;
+            }
+            // A return in a loop.
+            throw new NotSpliceable();
+        }
+
+        private IfStmt tailIf(BaseExpr condition, BaseStmt thenBranch, BaseStmt elseBranch) throws NotSpliceable {
+            return new IfStmt(copy(condition), tail(thenBranch), elseBranch != null ? tail(elseBranch) : null);
+        }
+
+        private BaseStmt copy(BaseStmt stmt) throws NotSpliceable {
+            if (stmt == null) {
+                return null;
+            }
+            size++;
+            if (stmt instanceof ExprStmt exprStmt) {
+                return new ExprStmt(copy(exprStmt.expression));
+            }
+            if (stmt instanceof PrintStmt printStmt) {
+                return new PrintStmt(copy(printStmt.expression));
+            }
+            if (stmt instanceof VarStmt varStmt) {
+                // Initializer first: in `var a = a;` the right-hand side is still the outer `a`.
+                BaseExpr initializer = copy(varStmt.initializer);
+                return new VarStmt(declare(varStmt.name), initializer);
+            }
+            if (stmt instanceof BlockStmt blockStmt) {
+                names.push(new HashMap<>());
+                List<BaseStmt> statements = new ArrayList<>(blockStmt.statements.size());
+                for (Object statement : blockStmt.statements) {
+                    statements.add(copy((BaseStmt) statement));
+                }
+                names.pop();
+                return new BlockStmt(statements);
+            }
+            if (stmt instanceof IfStmt ifStmt) {
+                return new IfStmt(copy(ifStmt.condition), copy(ifStmt.thenBranch), copy(ifStmt.elseBranch));
+            }
+            if (stmt instanceof WhileStmt whileStmt) {
+                loops++;
+                WhileStmt copied = new WhileStmt(copy(whileStmt.condition), copy(whileStmt.body));
+                loops--;
+                return copied;
+            }
+            if (stmt instanceof BreakStmt && loops > 0) {
+                return new BreakStmt();
+            }
+            // A function declaration, or a return or break which has to leave the body.
+            throw new NotSpliceable();
+        }
+
+        private BaseExpr copy(BaseExpr expr) throws NotSpliceable {
+            if (expr == null) {
+                return null;
+            }
+            size++;
+            if (expr instanceof Literal literal) {
+                return new Literal(literal.value);
+            }
+            if (expr instanceof VarExpr varExpr) {
+                return new VarExpr(name(varExpr.name));
+            }
+            if (expr instanceof Grouping grouping) {
+                return new Grouping(copy(grouping.expr));
+            }
+            if (expr instanceof Unary unary) {
+                return new Unary(unary.operator, copy(unary.right));
+            }
+            if (expr instanceof Binary binary) {
+                return new Binary(copy(binary.left), binary.operator, copy(binary.right));
+            }
+            if (expr instanceof LogicalExpr logical) {
+                return new LogicalExpr(copy(logical.lhs), logical.operator, copy(logical.rhs));
+            }
+            if (expr instanceof AssignExpr assignExpr) {
+                BaseExpr value = copy(assignExpr.value);
+                return new AssignExpr(name(assignExpr.name), value);
+            }
+            if (expr instanceof Increment increment && operand(increment.expr, increment.operandToken)) {
+                Token name = name(increment.operandToken);
+                return new Increment(new VarExpr(name), name);
+            }
+            if (expr instanceof Decrement decrement && operand(decrement.expr, decrement.token)) {
+                Token name = name(decrement.token);
+                return new Decrement(new VarExpr(name), name);
+            }
+            if (expr instanceof FunCall funCall) {
+                BaseExpr callee = copy(funCall.callee);
+                List<BaseExpr> args = new ArrayList<>(funCall.args.size());
+                for (Object arg : funCall.args) {
+                    args.add(copy((BaseExpr) arg));
+                }
+                return new FunCall(callee, funCall.closingParen, args);
+            }
+            // A lambda.
+            throw new NotSpliceable();
+        }
+
+        // `a++` on a variable, the only kind there is to rename.
+        private static boolean operand(BaseExpr expr, Token token) {
+            return expr instanceof VarExpr varExpr && varExpr.name.lexeme.equals(token.lexeme);
+        }
+
+        private static boolean returns(BaseStmt stmt) {
+            if (stmt instanceof ReturnStmt) {
+                return true;
+            }
+            if (stmt instanceof BlockStmt blockStmt) {
+                for (Object statement : blockStmt.statements) {
+                    if (returns((BaseStmt) statement)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (stmt instanceof IfStmt ifStmt) {
+                return returns(ifStmt.thenBranch) || returns(ifStmt.elseBranch);
+            }
+            return stmt instanceof WhileStmt whileStmt && returns(whileStmt.body);
+        }
+
+        private static boolean alwaysReturns(BaseStmt stmt) {
+            if (stmt instanceof ReturnStmt) {
+                return true;
+            }
+            if (stmt instanceof BlockStmt blockStmt) {
+                // The Optimizer has dropped anything after a return.
+                List<BaseStmt> statements = blockStmt.statements;
+                return !statements.isEmpty() && alwaysReturns(statements.get(statements.size() - 1));
+            }
+            return stmt instanceof IfStmt ifStmt && ifStmt.elseBranch != null
+                    && alwaysReturns(ifStmt.thenBranch) && alwaysReturns(ifStmt.elseBranch);
+        }
+
+        private static BlockStmt followedBy(BaseStmt stmt, List<BaseStmt> rest) {
+            List<BaseStmt> statements = new ArrayList<>(rest.size() + 1);
+            if (stmt != null) {
+                statements.add(stmt);
+            }
+            statements.addAll(rest);
+            return new BlockStmt(statements);
+        }
+    }
+
+    /**
+     * Collects, for the whole program: how often each name is declared at the top level,
+     * every name declared in a local scope (blocks, functions, parameters), and every name
+     * assigned to.
+     */
+    private static class Survey implements BaseVisitor, BaseStmtVisitor {
+        final Map<String, Integer> topLevel = new HashMap<>();
+        final Set<String> local = new HashSet<>();
+        final Set<String> assigned = new HashSet<>();
+        // Set when some function body is not parsed yet.
+        boolean incomplete = false;
+        boolean readsEnv = false;
+
+        void declare(BaseStmt statement) {
+            if (statement instanceof VarStmt varStmt) {
+                topLevel.merge(varStmt.name.lexeme, 1, Integer::sum);
+            } else if (statement instanceof FunStmt funStmt) {
+                topLevel.merge(funStmt.funIdentifier.lexeme, 1, Integer::sum);
+            }
+        }
+
+        void visit(BaseStmt stmt) throws RuntimeError {
+            if (stmt != null) stmt.accept(this);
+        }
+
+        void visit(BaseExpr expr) throws RuntimeError {
+            if (expr != null) expr.accept(this);
+        }
+
+        // Everything below the top level is a local scope.
+        void visitLocal(List<BaseStmt> statements) throws RuntimeError {
+            for (BaseStmt stmt : statements) {
+                if (stmt instanceof VarStmt varStmt) {
+                    local.add(varStmt.name.lexeme);
+                } else if (stmt instanceof FunStmt funStmt) {
+                    local.add(funStmt.funIdentifier.lexeme);
+                }
+                visit(stmt);
+            }
+        }
+
+        void visitFunction(FunStmt funStmt) throws RuntimeError {
+            for (Object param : funStmt.parameters) {
+                local.add(((Token) param).lexeme);
+            }
+            if (!funStmt.isParsed()) {
+                incomplete = true;
+                return;
+            }
+            visitLocal(funStmt.body());
+        }
+
+        @Override
+        public Object visitGrouping(Grouping tGrouping) throws RuntimeError {
+            visit(tGrouping.expr);
+            return null;
+        }
+
+        @Override
+        public Object visitUnary(Unary tUnary) throws RuntimeError {
+            visit(tUnary.right);
+            return null;
+        }
+
+        @Override
+        public Object visitLiteral(Literal tLiteral) {
+            return null;
+        }
+
+        @Override
+        public Object visitBinary(Binary tBinary) throws RuntimeError {
+            visit(tBinary.left);
+            visit(tBinary.right);
+            return null;
+        }
+
+        @Override
+        public Object visitVarExpr(VarExpr varExpr) {
+            readsEnv |= varExpr.name.lexeme.equals("env");
+            return null;
+        }
+
+        @Override
+        public Object visitAssignExpr(AssignExpr assignExpr) throws RuntimeError {
+            assigned.add(assignExpr.name.lexeme);
+            visit(assignExpr.value);
+            return null;
+        }
+
+        @Override
+        public Object visitLogicalExpr(LogicalExpr logicalExpr) throws RuntimeError {
+            visit(logicalExpr.lhs);
+            visit(logicalExpr.rhs);
+            return null;
+        }
+
+        @Override
+        public Object visitIncrement(Increment increment) throws RuntimeError {
+            assigned.add(increment.operandToken.lexeme);
+            visit(increment.expr);
+            return null;
+        }
+
+        @Override
+        public Object visitDecrement(Decrement decrement) throws RuntimeError {
+            assigned.add(decrement.token.lexeme);
+            visit(decrement.expr);
+            return null;
+        }
+
+        @Override
+        public Object visitCallExpr(FunCall funCall) throws RuntimeError {
+            visit(funCall.callee);
+            for (Object arg : funCall.args) {
+                visit((BaseExpr) arg);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitLambdaExpr(LambdaExpr lambdaExpr) throws RuntimeError {
+            visitFunction(lambdaExpr.loxLambda);
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
+            visit(exprStmt.expression);
+            return null;
+        }
+
+        @Override
+        public Object visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
+            visit(printStmt.expression);
+            return null;
+        }
+
+        @Override
+        public Object visitVarStmt(VarStmt varStmt) throws RuntimeError {
+            visit(varStmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Object visitBlockStmt(BlockStmt blockStmt) throws RuntimeError {
+            visitLocal(blockStmt.statements);
+            return null;
+        }
+
+        @Override
+        public Object visitIfStmt(IfStmt ifStmt) throws RuntimeError {
+            visit(ifStmt.condition);
+            visit(ifStmt.thenBranch);
+            visit(ifStmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Object visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
+            visit(whileStmt.condition);
+            visit(whileStmt.body);
+            return null;
+        }
+
+        @Override
+        public Object visitForStmt(ForStmt forStmt) throws RuntimeError {
+            visit(forStmt.condition);
+            visit(forStmt.body);
+            return null;
+        }
+
+        @Override
+        public Object visitBreakStmt(BreakStmt breakStmt) {
+            return null;
+        }
+
+        @Override
+        public Object visitFunStmt(FunStmt funStmt) throws RuntimeError {
+            visitFunction(funStmt);
+            return null;
+        }
+
+        @Override
+        public Object visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+            visit(returnStmt.returnValue);
+            return null;
+        }
+    }
+}
@@ -2,39 +2,102 @@ package com.gill.jlox.operations;
 
 import com.gill.jlox.LoxKeywords;
 import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenBuffer;
 import com.gill.jlox.tokens.TokenType;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * com.gill.jlox.operations.Lexer/Scanner of the source code in JLox.
  * com.gill.jlox.operations.Lexer scans the token character-by-character (sometimes doing
  * lookaheads) and produces a list of com.gill.jlox.tokens.
  */
-public class Lexer {
+public class Lexer implements TokenSource {
 
     String src;
-    Integer startIdx = 0;
-    Integer currentIdx = 0;
-    Integer line = 1;
-    Integer sourceSize = 0;
-    List<Token> tokenStream;
-
-    static final Map<String, TokenType> keywords = LoxKeywords.keywords;
+    int startIdx = 0;
+    int currentIdx = 0;
+    int line = 1;
+    int sourceSize = 0;
+    TokenBuffer tokens;
+    // Tokens a streaming buffer starts out with room for; it grows if one statement needs more.
+    static final int STREAM_WINDOW = 64;
 
     public List<Token> scan(String src) throws LexerError {
-        this.tokenStream = new ArrayList<>();
+        return scanToBuffer(src).toTokens();
+    }
+
+    /**
+     * Scans the whole source into a TokenBuffer. No Token objects are created here;
+     * the Parser materializes the few it needs.
+     */
+    public TokenBuffer scanToBuffer(String src) throws LexerError {
+        start(src, new TokenBuffer(src));
+        while (this.currentIdx < this.sourceSize) {
+            addNextToken();
+            this.startIdx = this.currentIdx;
+        }
+        this.tokens.add(TokenType.EOF, this.currentIdx, 0, this.line);
+        return this.tokens;
+    }
+
+    /**
+     * Scans src lazily: nothing is scanned until the Parser pulls tokens with scanNext.
+     */
+    public TokenSource stream(String src) {
+        start(src, new TokenBuffer(src, STREAM_WINDOW));
+        return this;
+    }
+
+    /**
+     * Scans src from `from` up to `to` into tokens, without an EOF at the end, and returns
+     * the line it ended on. ParallelLexer uses this for one chunk of a large source.
+     */
+    int scanRange(String src, int from, int to, int line, TokenBuffer tokens) throws LexerError {
+        start(src, tokens);
+        this.sourceSize = to;
+        this.currentIdx = from;
+        this.startIdx = from;
+        this.line = line;
+        while (this.currentIdx < this.sourceSize) {
+            addNextToken();
+            this.startIdx = this.currentIdx;
+        }
+        return this.line;
+    }
+
+    private void start(String src, TokenBuffer tokens) {
+        this.tokens = tokens;
         this.src = src;
         this.sourceSize = this.src.length();
         this.currentIdx = 0;
+        this.startIdx = 0;
+        this.line = 1;
+    }
+
+    @Override
+    public TokenBuffer buffer() {
+        return this.tokens;
+    }
+
+    @Override
+    public boolean scanNext() throws LexerError {
+        int scanned = this.tokens.size();
+        // Whitespace and comments don't produce a token, so keep going until something does.
         while (this.currentIdx < this.sourceSize) {
             addNextToken();
             this.startIdx = this.currentIdx;
+            if (this.tokens.size() > scanned) {
+                return true;
+            }
         }
-        this.tokenStream.add(new Token("", TokenType.EOF, null, this.line));
-        return this.tokenStream;
+        if (this.currentIdx == this.sourceSize) {
+            this.tokens.add(TokenType.EOF, this.currentIdx, 0, this.line);
+            // Past the end: the next call knows EOF is already in the buffer.
+            this.currentIdx++;
+            return true;
+        }
+        return false;
     }
 
     private void addNextToken() throws LexerError {
@@ -97,7 +160,8 @@ public class Lexer {
                 } else if (isAlphaNumeric(c)) {
                     addIdentifier();
                 } else {
-                    throw new Lexer.LexerError(line + ": Unexpected Character: '" + c + "'");
+                    String character = Character.toString(src.codePointAt(startIdx));
+                    throw new Lexer.LexerError(line + ": Unexpected Character: '" + character + "'");
                 }
             }
         }
@@ -114,8 +178,8 @@ public class Lexer {
             // Consume the terminating quote symbol
             advance();
         }
-        String stringValue = this.src.substring(this.startIdx + 1, this.currentIdx - 1);
-        addToken(TokenType.STRING, stringValue);
+        // The literal (without the quotes) is cut out of the source on demand, see TokenBuffer.literal.
+        addToken(TokenType.STRING);
     }
 
     private boolean currentMatch(char expected) {
@@ -130,12 +194,22 @@ public class Lexer {
     private void addIdentifier() {
         while (isAlphaNumeric(peek()))
             advance();
-        String text = src.substring(startIdx, currentIdx);
-        TokenType type = keywords.get(text);
-        if (type == null) {
-            type = TokenType.IDENTIFIER;
+        addToken(keywordOrIdentifier());
+    }
+
+    /**
+     * Matches the identifier in place, so scanning doesn't have to cut a String out of
+     * the source for every identifier: its length and first two characters pick the only
+     * keyword it could be, and then just that one is compared.
+     */
+    private TokenType keywordOrIdentifier() {
+        int length = currentIdx - startIdx;
+        char second = length > 1 ? src.charAt(startIdx + 1) : '\0';
+        TokenType keyword = LoxKeywords.candidate(length, src.charAt(startIdx), second);
+        if (keyword != null && src.regionMatches(startIdx + 1, LoxKeywords.spelling(keyword), 1, length - 1)) {
+            return keyword;
         }
-        addToken(type);
+        return TokenType.IDENTIFIER;
     }
 
     private boolean isAlphaNumeric(char c) {
@@ -156,12 +230,13 @@ public class Lexer {
             while (isDigit(peek())) advance();
         }
         // start...current now encapsulates the token which we think will represent the number.
-        String substr = src.substring(this.startIdx, this.currentIdx);
-        addToken(TokenType.NUMBER, substr);
+        // TokenBuffer.literal parses it (once, when the Parser builds the Literal),
+        // so the runtime only ever sees Doubles.
+        addToken(TokenType.NUMBER);
     }
 
     private char lookAhead() {
-        if (this.currentIdx + 1 > this.sourceSize) return '\0';
+        if (this.currentIdx + 1 >= this.sourceSize) return '\0';
         return this.src.charAt(this.currentIdx + 1);
     }
 
@@ -200,17 +275,12 @@ public class Lexer {
     }
 
     private void addToken(TokenType tokenType) {
-        addToken(tokenType, null);
-    }
-    private void addToken(TokenType tokenType, Object literal) {
         if (tokenType == null) return;
-        String substring = this.src.substring(this.startIdx, this.currentIdx);
-        if (substring.isEmpty()) return;
-        Token t = new Token(substring, tokenType, literal, this.line);
-        this.tokenStream.add(t);
+        if (this.currentIdx == this.startIdx) return;
+        this.tokens.add(tokenType, this.startIdx, this.currentIdx - this.startIdx, this.line);
     }
 
-    public class LexerError extends Exception {
+    public static class LexerError extends Exception {
         public LexerError(String s) {
             super(s);
         }
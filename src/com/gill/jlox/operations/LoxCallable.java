@@ -2,11 +2,38 @@ package com.gill.jlox.operations;
 
 import com.gill.jlox.runtime.RuntimeError;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface LoxCallable {
     Object call(Evaluator evaluator, List<Object> args) throws RuntimeError;
 
+    /*
+     * Fixed-arity entry points. Callers that know how many arguments they have
+     * (after checking arity()) use these, so no argument list is built per call.
+     * The defaults just fall back to call(); implementations override the ones they can do better.
+     */
+    default Object call0(Evaluator evaluator) throws RuntimeError {
+        return call(evaluator, Arrays.asList());
+    }
+
+    default Object call1(Evaluator evaluator, Object arg0) throws RuntimeError {
+        return call(evaluator, Arrays.asList(arg0));
+    }
+
+    default Object call2(Evaluator evaluator, Object arg0, Object arg1) throws RuntimeError {
+        return call(evaluator, Arrays.asList(arg0, arg1));
+    }
+
+    default Object call3(Evaluator evaluator, Object arg0, Object arg1, Object arg2) throws RuntimeError {
+        return call(evaluator, Arrays.asList(arg0, arg1, arg2));
+    }
+
+    // Spread form for everything else.
+    default Object callN(Evaluator evaluator, Object[] args) throws RuntimeError {
+        return call(evaluator, Arrays.asList(args));
+    }
+
     int arity();
     boolean isVariadic();
 }
@@ -1,5 +1,6 @@
 package com.gill.jlox.operations;
 
+import com.gill.jlox.ast.statements.BaseStmt;
 import com.gill.jlox.ast.statements.FunStmt;
 import com.gill.jlox.runtime.Environment;
 import com.gill.jlox.runtime.RuntimeError;
@@ -27,6 +28,9 @@ public class LoxFunction implements LoxCallable {
     private final Environment closure;
     private final String funcName;
     public final Boolean isLambda;
+    private final String[] parameterNames;
+    // The declaration's body, fetched on the first call: with --lazy-parse that is when it gets parsed.
+    private List<BaseStmt> body;
 
     public LoxFunction(FunStmt declaration, Environment closure, Boolean isLambda) {
         this.declaration = declaration;
@@ -36,24 +40,109 @@ public class LoxFunction implements LoxCallable {
             this.funcName = declaration.funIdentifier.lexeme;
         else
             this.funcName = "anonFn";
+        this.parameterNames = new String[declaration.parameters.size()];
+        for (int i = 0; i < parameterNames.length; i++) {
+            parameterNames[i] = ((Token) declaration.parameters.get(i)).lexeme;
+        }
         // System.out.println("closure for " + declaration.funIdentifier.lexeme + " = " + closure);
     }
 
     @Override
     public Object call(Evaluator evaluator, List<Object> args) throws RuntimeError {
-        Environment functionEnv = new Environment(closure);
-        for (int i = 0; i < this.declaration.parameters.size(); ++i) {
-            Token currParam = (Token) this.declaration.parameters.get(i);
-            functionEnv.define(currParam.lexeme, args.get(i));
+        Environment functionEnv = newFrame();
+        for (int i = 0; i < parameterNames.length; ++i) {
+            bind(functionEnv, i, args.get(i));
+        }
+        return execute(evaluator, functionEnv);
+    }
+
+    // The callers have already checked arity(), so these bind straight into the new frame.
+
+    @Override
+    public Object call0(Evaluator evaluator) throws RuntimeError {
+        return execute(evaluator, newFrame());
+    }
+
+    @Override
+    public Object call1(Evaluator evaluator, Object arg0) throws RuntimeError {
+        Environment functionEnv = newFrame();
+        bind(functionEnv, 0, arg0);
+        return execute(evaluator, functionEnv);
+    }
+
+    @Override
+    public Object call2(Evaluator evaluator, Object arg0, Object arg1) throws RuntimeError {
+        Environment functionEnv = newFrame();
+        bind(functionEnv, 0, arg0);
+        bind(functionEnv, 1, arg1);
+        return execute(evaluator, functionEnv);
+    }
+
+    @Override
+    public Object call3(Evaluator evaluator, Object arg0, Object arg1, Object arg2) throws RuntimeError {
+        Environment functionEnv = newFrame();
+        bind(functionEnv, 0, arg0);
+        bind(functionEnv, 1, arg1);
+        bind(functionEnv, 2, arg2);
+        return execute(evaluator, functionEnv);
+    }
+
+    @Override
+    public Object callN(Evaluator evaluator, Object[] args) throws RuntimeError {
+        Environment functionEnv = newFrame();
+        for (int i = 0; i < parameterNames.length; ++i) {
+            bind(functionEnv, i, args[i]);
+        }
+        return execute(evaluator, functionEnv);
+    }
+
+    /**
+     * A new frame with args bound to the parameters, for a tail call. See Evaluator.tailCall.
+     */
+    Environment frame(Object[] args) throws RuntimeError {
+        Environment functionEnv = newFrame();
+        for (int i = 0; i < parameterNames.length; ++i) {
+            bind(functionEnv, i, args[i]);
+        }
+        return functionEnv;
+    }
+
+    private Environment newFrame() throws RuntimeError {
+        if (this.body == null) {
+            // Before looking at slotCount, which a deferred body only gets once it is resolved.
+            this.body = this.declaration.body();
+        }
+        if (this.declaration.slotCount >= 0) {
+            return new Environment(closure, this.declaration.slotCount);
+        }
+        return new Environment(closure);
+    }
+
+    private void bind(Environment functionEnv, int i, Object value) {
+        if (this.declaration.slotCount >= 0) {
+            // Resolved: parameter i lives in slot i.
+            functionEnv.defineAt(i, parameterNames[i], value);
+        } else {
+            functionEnv.define(parameterNames[i], value);
+        }
+    }
+
+    private Object execute(Evaluator evaluator, Environment functionEnv) throws RuntimeError {
+        LoxFunction function = this;
+        Completion completion = evaluator.executeBlock(function.body, functionEnv);
+        // The trampoline: the function ended with `return g(...)`, so g runs here, in its place.
+        while (completion == Completion.TAIL_CALL) {
+            function = evaluator.tailFunction;
+            functionEnv = evaluator.tailFrame;
+            evaluator.tailFunction = null;
+            evaluator.tailFrame = null;
+            completion = evaluator.executeBlock(function.body, functionEnv);
         }
-        try {
-            evaluator.executeBlock(this.declaration.body, functionEnv);
-        } catch (ReturnObjectException returnValue) {
-            return returnValue.value;
-        } catch (BreakError e) {
+        if (completion == Completion.BREAK) {
             throw new RuntimeError("This should never happen - you're doing something wrong");
         }
-        return null;
+        // NORMAL carries no value, so falling off the end returns nil.
+        return completion.value;
     }
 
     @Override
@@ -0,0 +1,320 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.ast.expressions.*;
+import com.gill.jlox.ast.statements.*;
+import com.gill.jlox.runtime.Operators;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the parsed program before the Resolver sees it, so none of the engines has to
+ * compute at runtime what can be worked out from the source alone:
+ *
+ *  - Constant folding: Unary, Binary and Grouping nodes whose operands are literals become
+ *    a Literal; so does a LogicalExpr whose left-hand side decides it, eg. `false and x`,
+ *    while `true and x` becomes just `x`. Folding uses Operators, so it computes exactly
+ *    what the engines would. An operation which would fail (`1 / 0`, `-"a"`) is left
+ *    alone, to fail at runtime like before.
+ *  - Branch pruning: `if` with a literal condition is replaced by the branch it takes,
+ *    `while` with a falsy literal condition is dropped.
+ *  - Dead code: statements after a `return` or `break` in the same block are dropped.
+ *  - Inlining (optional, see setInlining): a call to a small top-level function is
+ *    replaced by the expression it returns, and a statement which only calls one by the
+ *    function's body, see Inliner.
+ *
+ * Each visit returns the node to use in place of the one visited; a statement visit
+ * returns null when nothing is left of the statement.
+ */
+public class Optimizer implements BaseVisitor, BaseStmtVisitor {
+
+    private boolean inlining = false;
+    private Inliner inliner;
+
+    /**
+     * Inline calls to small functions. Only valid when optimize is given the whole program:
+     * the Inliner has to see every declaration of and assignment to a function's name.
+     */
+    public void setInlining(boolean inlining) {
+        this.inlining = inlining;
+    }
+
+    /**
+     * The program's top-level statements are only trimmed, not cut short after a `return`:
+     * there is no block to leave, so the statements after it still run.
+     */
+    public List<BaseStmt> optimize(List<BaseStmt> statements) throws RuntimeError {
+        if (inlining) {
+            inliner = Inliner.survey(statements);
+        }
+        List<BaseStmt> optimized = new ArrayList<>(statements.size());
+        for (BaseStmt statement : statements) {
+            BaseStmt result = optimize(statement);
+            if (inliner != null) {
+                inliner.declared(result);
+                List<BaseStmt> spliced = inliner.splice(result, this);
+                if (spliced != null) {
+                    // One block, see Inliner.splice.
+                    result = spliced.get(0);
+                }
+            }
+            if (result instanceof ExprStmt && !(statement instanceof ExprStmt)) {
+                // Evaluator.evaluate hands the value of a top-level expression statement to
+                // the REPL; `if (true) 1 + 2;` should still show nil, not 3.
+                result = new BlockStmt(listOf(result));
+            }
+            if (result != null) {
+                optimized.add(result);
+            }
+        }
+        return optimized;
+    }
+
+    private List<BaseStmt> optimizeBlock(List<BaseStmt> statements) throws RuntimeError {
+        List<BaseStmt> optimized = new ArrayList<>(statements.size());
+        for (BaseStmt statement : statements) {
+            BaseStmt result = optimize(statement);
+            List<BaseStmt> spliced = inliner != null ? inliner.splice(result, this) : null;
+            if (spliced != null) {
+                optimized.addAll(spliced);
+            } else if (result != null) {
+                optimized.add(result);
+            }
+            if (result instanceof ReturnStmt || result instanceof BreakStmt) {
+                break;
+            }
+        }
+        return optimized;
+    }
+
+    // The copy of a function body which Inliner.splice puts in place of a call.
+    List<BaseStmt> optimizeSpliced(List<BaseStmt> body) throws RuntimeError {
+        return optimizeBlock(body);
+    }
+
+    private BaseStmt optimize(BaseStmt stmt) throws RuntimeError {
+        if (stmt == null) return null;
+        return (BaseStmt) stmt.accept(this);
+    }
+
+    BaseExpr optimize(BaseExpr expr) throws RuntimeError {
+        if (expr == null) return null;
+        return (BaseExpr) expr.accept(this);
+    }
+
+    // Where a statement is required (a loop body, an if branch), nothing becomes an empty block.
+    private BaseStmt statementOrEmpty(BaseStmt stmt) throws RuntimeError {
+        BaseStmt result = branch(stmt);
+        return result != null ? result : new BlockStmt(new ArrayList<>());
+    }
+
+    // A statement on its own, eg. an else branch: a call spliced in there gets a block of its own.
+    private BaseStmt branch(BaseStmt stmt) throws RuntimeError {
+        BaseStmt result = optimize(stmt);
+        if (inliner == null || result instanceof VarStmt) {
+            return result;
+        }
+        List<BaseStmt> spliced = inliner.splice(result, this);
+        if (spliced == null) {
+            return result;
+        }
+        return spliced.size() == 1 ? spliced.get(0) : new BlockStmt(spliced);
+    }
+
+    private static List<BaseStmt> listOf(BaseStmt stmt) {
+        List<BaseStmt> statements = new ArrayList<>(1);
+        statements.add(stmt);
+        return statements;
+    }
+
+    private FunStmt optimizeFunction(FunStmt funStmt) throws RuntimeError {
+        if (!funStmt.isParsed()) {
+            // --lazy-parse: optimize the body once it is parsed, before the Resolver gets it.
+            FunStmt.DeferredBody parse = funStmt.deferredBody;
+            funStmt.deferredBody = () -> optimizeBlock(parse.parse());
+            return funStmt;
+        }
+        if (inliner != null) {
+            inliner.beginFunction(funStmt.parameters);
+        }
+        List<BaseStmt> body = optimizeBlock(funStmt.body());
+        if (inliner != null) {
+            inliner.endFunction();
+        }
+        return new FunStmt(funStmt.funIdentifier, funStmt.parameters, body);
+    }
+
+    @Override
+    public Object visitGrouping(Grouping tGrouping) throws RuntimeError {
+        tGrouping.expr = optimize(tGrouping.expr);
+        if (tGrouping.expr instanceof Literal) {
+            return tGrouping.expr;
+        }
+        return tGrouping;
+    }
+
+    @Override
+    public Object visitUnary(Unary tUnary) throws RuntimeError {
+        tUnary.right = optimize(tUnary.right);
+        if (tUnary.right instanceof Literal right) {
+            try {
+                return new Literal(Operators.unary(tUnary.operator, right.value));
+            } catch (RuntimeError e) {
+                // Leave it to fail at runtime, where the error is reported.
+            }
+        }
+        return tUnary;
+    }
+
+    @Override
+    public Object visitLiteral(Literal tLiteral) {
+        return tLiteral;
+    }
+
+    @Override
+    public Object visitBinary(Binary tBinary) throws RuntimeError {
+        tBinary.left = optimize(tBinary.left);
+        tBinary.right = optimize(tBinary.right);
+        if (tBinary.left instanceof Literal left && tBinary.right instanceof Literal right) {
+            try {
+                return new Literal(Operators.binary(tBinary.operator, left.value, right.value));
+            } catch (RuntimeError e) {
+                // As in visitUnary.
+            }
+        }
+        return tBinary;
+    }
+
+    @Override
+    public Object visitVarExpr(VarExpr varExpr) {
+        return varExpr;
+    }
+
+    @Override
+    public Object visitAssignExpr(AssignExpr assignExpr) throws RuntimeError {
+        assignExpr.value = optimize(assignExpr.value);
+        return assignExpr;
+    }
+
+    @Override
+    public Object visitLogicalExpr(LogicalExpr logicalExpr) throws RuntimeError {
+        logicalExpr.lhs = optimize(logicalExpr.lhs);
+        logicalExpr.rhs = optimize(logicalExpr.rhs);
+        if (logicalExpr.lhs instanceof Literal left) {
+            // Same short-circuit as Evaluator.visitLogicalExpr: the left value if it decides, else the right.
+            boolean truthy = Operators.isTruthy(left.value);
+            boolean decided = logicalExpr.operator.tokenType == TokenType.OR ? truthy : !truthy;
+            return decided ? left : logicalExpr.rhs;
+        }
+        return logicalExpr;
+    }
+
+    @Override
+    public Object visitIncrement(Increment increment) throws RuntimeError {
+        increment.expr = optimize(increment.expr);
+        return increment;
+    }
+
+    @Override
+    public Object visitDecrement(Decrement decrement) throws RuntimeError {
+        decrement.expr = optimize(decrement.expr);
+        return decrement;
+    }
+
+    @Override
+    public Object visitCallExpr(FunCall funCall) throws RuntimeError {
+        List<BaseExpr> args = new ArrayList<>(funCall.args.size());
+        for (Object arg : funCall.args) {
+            args.add(optimize((BaseExpr) arg));
+        }
+        FunCall optimized = new FunCall(optimize(funCall.callee), funCall.closingParen, args);
+        BaseExpr inlined = inliner != null ? inliner.inline(optimized, this) : null;
+        return inlined != null ? inlined : optimized;
+    }
+
+    @Override
+    public Object visitLambdaExpr(LambdaExpr lambdaExpr) throws RuntimeError {
+        LambdaExpr optimized = new LambdaExpr(optimizeFunction(lambdaExpr.loxLambda));
+        optimized.param = lambdaExpr.param;
+        return optimized;
+    }
+
+    @Override
+    public Object visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
+        return new ExprStmt(optimize(exprStmt.expression));
+    }
+
+    @Override
+    public Object visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
+        return new PrintStmt(optimize(printStmt.expression));
+    }
+
+    @Override
+    public Object visitVarStmt(VarStmt varStmt) throws RuntimeError {
+        varStmt.initializer = optimize(varStmt.initializer);
+        if (inliner != null) {
+            inliner.define(varStmt.name.lexeme, varStmt.initializer);
+        }
+        return varStmt;
+    }
+
+    @Override
+    public Object visitBlockStmt(BlockStmt blockStmt) throws RuntimeError {
+        if (inliner == null) {
+            return new BlockStmt(optimizeBlock(blockStmt.statements));
+        }
+        inliner.beginScope();
+        List<BaseStmt> statements = optimizeBlock(blockStmt.statements);
+        inliner.endScope();
+        return new BlockStmt(statements);
+    }
+
+    @Override
+    public Object visitIfStmt(IfStmt ifStmt) throws RuntimeError {
+        ifStmt.condition = optimize(ifStmt.condition);
+        if (ifStmt.condition instanceof Literal condition) {
+            // Only the branch taken is left (and may be nothing at all).
+            return optimize(Operators.isTruthy(condition.value) ? ifStmt.thenBranch : ifStmt.elseBranch);
+        }
+        ifStmt.thenBranch = statementOrEmpty(ifStmt.thenBranch);
+        ifStmt.elseBranch = branch(ifStmt.elseBranch);
+        return ifStmt;
+    }
+
+    @Override
+    public Object visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
+        BaseExpr condition = optimize(whileStmt.condition);
+        if (condition instanceof Literal literal && !Operators.isTruthy(literal.value)) {
+            return null;
+        }
+        return new WhileStmt(condition, statementOrEmpty(whileStmt.body));
+    }
+
+    @Override
+    public Object visitForStmt(ForStmt forStmt) throws RuntimeError {
+        // The Parser turns for loops into while loops.
+        forStmt.condition = optimize(forStmt.condition);
+        forStmt.body = statementOrEmpty(forStmt.body);
+        return forStmt;
+    }
+
+    @Override
+    public Object visitBreakStmt(BreakStmt breakStmt) {
+        return breakStmt;
+    }
+
+    @Override
+    public Object visitFunStmt(FunStmt funStmt) throws RuntimeError {
+        if (inliner != null) {
+            inliner.define(funStmt.funIdentifier.lexeme);
+        }
+        return optimizeFunction(funStmt);
+    }
+
+    @Override
+    public Object visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+        return new ReturnStmt(optimize(returnStmt.returnValue));
+    }
+}
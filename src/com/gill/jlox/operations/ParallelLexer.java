@@ -0,0 +1,197 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.tokens.TokenBuffer;
+import com.gill.jlox.tokens.TokenType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Lexes a large source on several threads. The output is exactly what Lexer (or
+ * ByteLexer, for bytes) produces on its own, EOF and line numbers included.
+ *
+ * A quick pre-pass walks the source once, looking only at quotes, comments and newlines,
+ * and picks one split point roughly every size/chunks characters: just after a newline
+ * that is not inside a string literal. No token can span such a newline (a // comment
+ * ends at it), so every chunk can be scanned on its own - starting from the line number
+ * the pre-pass counted up to it. The chunks are scanned on a ForkJoinPool and their
+ * buffers appended in order. A lex error is the one the first failing chunk reports,
+ * which is the one a sequential scan would have stopped at.
+ *
+ * Sources smaller than MIN_PARALLEL_SIZE are scanned on the calling thread.
+ */
+public class ParallelLexer {
+
+    // Below this many characters, splitting up the work costs more than it saves.
+    public static final int MIN_PARALLEL_SIZE = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final int chunks;
+
+    public ParallelLexer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(ForkJoinPool pool) {
+        this.pool = pool;
+        // A few chunks per thread, so one slow chunk doesn't hold up the rest.
+        this.chunks = pool.getParallelism() * 4;
+    }
+
+    public TokenBuffer scan(String src) throws Lexer.LexerError {
+        if (src.length() < MIN_PARALLEL_SIZE || pool.getParallelism() == 1) {
+            return new Lexer().scanToBuffer(src);
+        }
+        int[] offsets = new int[chunks + 1];
+        int[] lines = new int[chunks + 1];
+        int count = splitPoints(src, offsets, lines);
+        List<Future<Chunk>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = offsets[i];
+            int to = offsets[i + 1];
+            int line = lines[i];
+            tasks.add(pool.submit(() -> {
+                TokenBuffer tokens = new TokenBuffer(src, Math.max(16, (to - from) / 3));
+                int endLine = new Lexer().scanRange(src, from, to, line, tokens);
+                return new Chunk(tokens, endLine);
+            }));
+        }
+        return concat(tasks, total -> new TokenBuffer(src, total), src.length());
+    }
+
+    public TokenBuffer scan(ByteBuffer src) throws Lexer.LexerError {
+        if (src.limit() < MIN_PARALLEL_SIZE || pool.getParallelism() == 1) {
+            return new ByteLexer().scan(src);
+        }
+        int[] offsets = new int[chunks + 1];
+        int[] lines = new int[chunks + 1];
+        int count = splitPoints(src, offsets, lines);
+        List<Future<Chunk>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = offsets[i];
+            int to = offsets[i + 1];
+            int line = lines[i];
+            tasks.add(pool.submit(() -> {
+                TokenBuffer tokens = new TokenBuffer(src, Math.max(16, (to - from) / 3));
+                int endLine = new ByteLexer().scanRange(src, from, to, line, tokens);
+                return new Chunk(tokens, endLine);
+            }));
+        }
+        return concat(tasks, total -> new TokenBuffer(src, total), src.limit());
+    }
+
+    /**
+     * Fills offsets[0..n] with chunk boundaries (offsets[n] is the end of the source) and
+     * lines[i] with the line chunk i starts on. Returns n, the number of chunks.
+     */
+    private int splitPoints(String src, int[] offsets, int[] lines) {
+        int size = src.length();
+        int target = size / chunks;
+        int count = 1;
+        int next = target;
+        int line = 1;
+        boolean inString = false;
+        lines[0] = 1;
+        for (int i = 0; i < size; i++) {
+            char c = src.charAt(i);
+            if (c == '\n') {
+                line++;
+                if (!inString && i + 1 >= next && count < chunks) {
+                    offsets[count] = i + 1;
+                    lines[count] = line;
+                    count++;
+                    next = i + 1 + target;
+                }
+            } else if (c == '"') {
+                inString = !inString;
+            } else if (c == '/' && !inString && i + 1 < size && src.charAt(i + 1) == '/') {
+                // Skip the comment, so a quote in it doesn't look like the start of a string.
+                while (i + 1 < size && src.charAt(i + 1) != '\n') {
+                    i++;
+                }
+            }
+        }
+        offsets[count] = size;
+        return count;
+    }
+
+    private int splitPoints(ByteBuffer src, int[] offsets, int[] lines) {
+        int size = src.limit();
+        int target = size / chunks;
+        int count = 1;
+        int next = target;
+        int line = 1;
+        boolean inString = false;
+        lines[0] = 1;
+        for (int i = 0; i < size; i++) {
+            byte c = src.get(i);
+            if (c == '\n') {
+                line++;
+                if (!inString && i + 1 >= next && count < chunks) {
+                    offsets[count] = i + 1;
+                    lines[count] = line;
+                    count++;
+                    next = i + 1 + target;
+                }
+            } else if (c == '"') {
+                inString = !inString;
+            } else if (c == '/' && !inString && i + 1 < size && src.get(i + 1) == '/') {
+                while (i + 1 < size && src.get(i + 1) != '\n') {
+                    i++;
+                }
+            }
+        }
+        offsets[count] = size;
+        return count;
+    }
+
+    private static TokenBuffer concat(List<Future<Chunk>> tasks, IntFunction<TokenBuffer> newBuffer, int end)
+            throws Lexer.LexerError {
+        List<Chunk> results = new ArrayList<>(tasks.size());
+        int total = 1;
+        for (Future<Chunk> task : tasks) {
+            Chunk chunk = join(task);
+            results.add(chunk);
+            total += chunk.tokens.size();
+        }
+        TokenBuffer tokens = newBuffer.apply(total);
+        for (Chunk chunk : results) {
+            tokens.addAll(chunk.tokens);
+        }
+        tokens.add(TokenType.EOF, end, 0, results.get(results.size() - 1).endLine);
+        return tokens;
+    }
+
+    private static Chunk join(Future<Chunk> task) throws Lexer.LexerError {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // ForkJoinPool wraps a checked exception thrown by a submitted Callable in a
+            // RuntimeException (and may wrap that again when rethrowing across threads).
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof Lexer.LexerError) {
+                    throw (Lexer.LexerError) cause;
+                }
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Chunk {
+        final TokenBuffer tokens;
+        final int endLine;
+
+        Chunk(TokenBuffer tokens, int endLine) {
+            this.tokens = tokens;
+            this.endLine = endLine;
+        }
+    }
+}
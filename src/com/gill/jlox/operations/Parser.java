@@ -3,6 +3,7 @@ package com.gill.jlox.operations;
 import com.gill.jlox.runtime.Lox;
 import com.gill.jlox.runtime.RuntimeError;
 import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenBuffer;
 import com.gill.jlox.tokens.TokenType;
 import com.gill.jlox.ast.expressions.*;
 import com.gill.jlox.ast.statements.*;
@@ -20,13 +21,33 @@ public class Parser {
             super(msg);
         }
     }
-    List<Token> tokenStream;
+    // Cursor over the Lexer's output: currentIndex is the next token to look at.
+    TokenBuffer tokens;
+    // Set when parsing from a stream: tokens are then scanned only as the cursor reaches them.
+    private TokenSource source;
     private int currentIndex = 0;
     private boolean insideLoop = false;
+    // --lazy-parse: skip over the bodies of `fun` declarations, see deferBody.
+    private boolean lazy = false;
+
+    /**
+     * With lazy set, parse() only brace-matches the body of each named function and
+     * remembers where it is; the body is parsed the first time it is needed (normally its
+     * first call), see FunStmt.body(). Syntax errors inside a body go unnoticed until then.
+     * Has no effect on stream(), which doesn't keep the tokens around.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
 
     public SyntaxTree parse(List<Token> tokenStream) throws ParseError {
+        return parse(TokenBuffer.of(tokenStream));
+    }
+
+    public SyntaxTree parse(TokenBuffer tokens) throws ParseError {
         this.currentIndex = 0; // Ensure we always start from the beginning
-        this.tokenStream = tokenStream;
+        this.tokens = tokens;
+        this.source = null;
         // BaseExpr root = equality();  // Evolving from Expr-based language to Statement-based language
         List<BaseStmt> program = new ArrayList<>();
         // A program is just a list of statements.
@@ -43,6 +64,47 @@ public class Parser {
         return new SyntaxTree(program);
     }
 
+    /**
+     * Starts parsing a program one top-level declaration at a time, see nextDeclaration.
+     */
+    public void stream(TokenSource source) {
+        this.currentIndex = 0;
+        this.source = source;
+        this.tokens = source.buffer();
+    }
+
+    /**
+     * Parses the next top-level declaration of the stream, or returns null at the end of it.
+     * The tokens of the declarations before it are dropped, so however long the program is,
+     * only the statement being parsed is ever held in the buffer.
+     */
+    public BaseStmt nextDeclaration() throws ParseError {
+        this.tokens.discardBefore(this.currentIndex);
+        if (!available(this.currentIndex) || isAtEnd()) {
+            return null;
+        }
+        return declaration();
+    }
+
+    /**
+     * Whether there is a token at index, pulling tokens from the stream (if any) up to it.
+     */
+    private boolean available(int index) {
+        while (index >= this.tokens.size()) {
+            if (this.source == null) {
+                return false;
+            }
+            try {
+                if (!this.source.scanNext()) {
+                    return false;
+                }
+            } catch (Lexer.LexerError e) {
+                throw new ParseError(e.getMessage());
+            }
+        }
+        return true;
+    }
+
     private BaseStmt declaration() {
         if (nextMatch(FUN)) return funDeclaration(false);
         if (nextMatch(VAR)) return varDeclaration();
@@ -51,7 +113,7 @@ public class Parser {
         }
     }
 
-    private FunStmt funDeclaration(Boolean isLambda) {
+    private FunStmt funDeclaration(boolean isLambda) {
         // 1. Identifier
         Token funIdentifier = null;
         if (!isLambda && nextMatch(IDENTIFIER)) {
@@ -79,10 +141,52 @@ public class Parser {
         }
         // 3. Function Body
         consume(LEFT_BRACE, "Expect '{' before function body");
+        if (lazy && !isLambda && this.source == null) {
+            return new FunStmt(funIdentifier, parameters, deferBody());
+        }
         List<BaseStmt> body = block();
         return new FunStmt(funIdentifier, parameters, body);
     }
 
+    /**
+     * Skips to the '}' which closes the body starting at the current token, and returns
+     * what parses the body from there later on.
+     */
+    private FunStmt.DeferredBody deferBody() {
+        TokenBuffer tokens = this.tokens;
+        int start = this.currentIndex;
+        boolean loop = this.insideLoop;
+        int depth = 1;
+        int end = start;
+        while (end < tokens.size() && depth > 0) {
+            TokenType type = tokens.type(end++);
+            if (type == LEFT_BRACE) {
+                depth++;
+            } else if (type == RIGHT_BRACE) {
+                depth--;
+            }
+        }
+        if (depth > 0) {
+            // Unbalanced: let the real parse report it, here and now.
+            List<BaseStmt> body = block();
+            return () -> body;
+        }
+        this.currentIndex = end;
+        return () -> {
+            Parser parser = new Parser();
+            parser.tokens = tokens;
+            parser.currentIndex = start;
+            parser.insideLoop = loop;
+            parser.lazy = true;
+            try {
+                return parser.block();
+            } catch (RuntimeException e) {
+                // A ParseError, or eg. `break` outside a loop.
+                throw new RuntimeError(e.getMessage());
+            }
+        };
+    }
+
     private BaseStmt varDeclaration() {
         consume(IDENTIFIER, "Expected variable name here!");
         Token identifierToken = prev();
@@ -95,27 +199,36 @@ public class Parser {
     }
 
     private BaseStmt statement() {
-        if (nextMatch(IF)) {
-            return ifStatement();
-        } else if (nextMatch(PRINT)) {
-            return printStatement();
-        } else if (nextMatch(BREAK)) {
-            if (!insideLoop) {
-                throw new RuntimeException("Break cannot occur outside for loop");
-            }
-            return breakStatement();
-        } else if (nextMatch(WHILE)) {
-            insideLoop = true;
-            return whileStatement();
-        } else if (nextMatch(FOR)) {
-            insideLoop = true;
-            return forStatement();
-        } else if (nextMatch(RETURN)) {
-            return returnStatement();
-        } else if (nextMatch(LEFT_BRACE)) {
-            return new BlockStmt(block());
-        } else {
-            return expressionStatement();
+        // One look at the current token picks the statement, instead of trying each keyword in turn.
+        switch (peekType()) {
+            case IF:
+                advance();
+                return ifStatement();
+            case PRINT:
+                advance();
+                return printStatement();
+            case BREAK:
+                advance();
+                if (!insideLoop) {
+                    throw new RuntimeException("Break cannot occur outside for loop");
+                }
+                return breakStatement();
+            case WHILE:
+                advance();
+                insideLoop = true;
+                return whileStatement();
+            case FOR:
+                advance();
+                insideLoop = true;
+                return forStatement();
+            case RETURN:
+                advance();
+                return returnStatement();
+            case LEFT_BRACE:
+                advance();
+                return new BlockStmt(block());
+            default:
+                return expressionStatement();
         }
     }
 
@@ -205,128 +318,120 @@ public class Parser {
 
     private BaseStmt printStatement() {
         BaseExpr expr = expression();
-        consume(SEMICOLON, "Expect ';' after expression: " + expr);
+        consume(SEMICOLON, "Expect ';' after expression: ", expr);
         return new PrintStmt(expr);
     }
 
     private BaseStmt expressionStatement() {
         BaseExpr expr = expression();
-        consume(SEMICOLON, "Expect ';' after expression: " + expr);
+        consume(SEMICOLON, "Expect ';' after expression: ", expr);
         return new ExprStmt(expr);
     }
 
-    private BaseExpr expression() {
-        return assignment();
-    }
-
-    private BaseExpr assignment() {
-        BaseExpr expr = or();
-        if (nextMatch(EQUAL)) {
-            BaseExpr value = assignment();
-            if (expr instanceof VarExpr) {
-                Token name = ((VarExpr)expr).name;
-                return new AssignExpr(name, value);
-            }
-            throw new RuntimeException("Invalid assignment target");
-        }
-        return expr;
-    }
-
-    private BaseExpr or() {
-        BaseExpr expr = and();
-        while (nextMatch(OR)) {
-            Token operator = prev();
-            BaseExpr right = and();
-            expr = new LogicalExpr(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private BaseExpr and() {
-        BaseExpr expr = equality();
-        while (nextMatch(AND)) {
-            Token operator = prev();
-            BaseExpr right = equality();
-            expr = new LogicalExpr(expr, operator, right);
-        }
-        return expr;
-    }
-
-
-    private boolean isAtEnd() {
-        return peekToken() != null && peekToken().tokenType == EOF;
-    }
-
-    private BaseExpr equality() {
-        BaseExpr left = comparison();
-        while (nextMatch(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            Token operator = prev();
-            BaseExpr right = comparison();
-            left = new Binary(left, operator, right);
-        }
-        return left;
-    }
-
-    private BaseExpr comparison() {
-        BaseExpr left = term();
-        while (nextMatch(TokenType.LESS, TokenType.LESS_EQUAL, TokenType.GREATER, TokenType.GREATER_EQUAL)) {
-            Token operator = prev();
-            BaseExpr right = term();
-            left = new Binary(left, operator, right);
-        }
-        return left;
+    /*
+     * Expressions are parsed Pratt-style: prefix() reads an operand (a primary, or a unary
+     * operator and its operand), then expression(minPrecedence) keeps folding in infix
+     * operators - binary, logical, assignment and calls - as long as they bind at least as
+     * tightly as minPrecedence. Left-associative chains like a + b + c are a loop, not a
+     * recursion per operand, and each operator costs one table lookup.
+     */
+    private static final int NONE = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int OR_PRECEDENCE = 2;
+    private static final int AND_PRECEDENCE = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
+
+    // How tightly each token binds as an infix operator, by TokenType ordinal. NONE: not one.
+    private static final int[] INFIX_PRECEDENCE = new int[TokenType.values().length];
+    private static final long UNARY_OPERATORS = bit(BANG) | bit(MINUS);
+    static {
+        INFIX_PRECEDENCE[EQUAL.ordinal()] = ASSIGNMENT;
+        INFIX_PRECEDENCE[OR.ordinal()] = OR_PRECEDENCE;
+        INFIX_PRECEDENCE[AND.ordinal()] = AND_PRECEDENCE;
+        INFIX_PRECEDENCE[BANG_EQUAL.ordinal()] = EQUALITY;
+        INFIX_PRECEDENCE[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        INFIX_PRECEDENCE[LESS.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[LESS_EQUAL.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[GREATER.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[GREATER_EQUAL.ordinal()] = COMPARISON;
+        INFIX_PRECEDENCE[MINUS.ordinal()] = TERM;
+        INFIX_PRECEDENCE[PLUS.ordinal()] = TERM;
+        INFIX_PRECEDENCE[SLASH.ordinal()] = FACTOR;
+        INFIX_PRECEDENCE[STAR.ordinal()] = FACTOR;
+        INFIX_PRECEDENCE[PERCENT.ordinal()] = FACTOR;
+        INFIX_PRECEDENCE[LEFT_PAREN.ordinal()] = CALL;
     }
 
-    private BaseExpr term() {
-        BaseExpr left = factor();
-        while (nextMatch(TokenType.MINUS, TokenType.PLUS)) {
-            Token operator = prev();
-            BaseExpr right = factor();
-            left = new Binary(left, operator, right);
-        }
-        return left;
+    private BaseExpr expression() {
+        return expression(ASSIGNMENT);
     }
 
-    private BaseExpr factor() {
-        BaseExpr left = unary();
-        while (nextMatch(TokenType.SLASH, TokenType.STAR, PERCENT)) {
-            Token operator = prev();
-            BaseExpr right = unary();
-            left = new Binary(left, operator, right);
+    private BaseExpr expression(int minPrecedence) {
+        BaseExpr left = prefix();
+        // Only turned into a Token if an error message about a call actually needs it.
+        int operand = this.currentIndex - 1;
+        while (available(this.currentIndex)) {
+            TokenType type = this.tokens.type(this.currentIndex);
+            int precedence = INFIX_PRECEDENCE[type.ordinal()];
+            if (precedence == NONE || precedence < minPrecedence) {
+                break;
+            }
+            advance();
+            switch (type) {
+                case LEFT_PAREN:
+                    // The outer loop supports currying
+                    left = parseArgsAndCreateCall(left, operand);
+                    break;
+                case EQUAL: {
+                    // Right-associative: a = b = c assigns c to b first.
+                    BaseExpr value = expression(ASSIGNMENT);
+                    if (!(left instanceof VarExpr)) {
+                        throw new RuntimeException("Invalid assignment target");
+                    }
+                    left = new AssignExpr(((VarExpr) left).name, value);
+                    break;
+                }
+                case AND:
+                case OR: {
+                    Token operator = prev();
+                    left = new LogicalExpr(left, operator, expression(precedence + 1));
+                    break;
+                }
+                default: {
+                    Token operator = prev();
+                    left = new Binary(left, operator, expression(precedence + 1));
+                }
+            }
         }
         return left;
     }
 
-    private BaseExpr unary() {
-        if (nextMatch(TokenType.BANG, TokenType.MINUS)) {
+    private BaseExpr prefix() {
+        if (nextMatch(UNARY_OPERATORS)) {
             Token operator = prev();
-            BaseExpr right = unary();
+            BaseExpr right = expression(UNARY);
             return new Unary(operator, right);
         }
-        return IncrementOrDecrement();
-    }
-
-    private BaseExpr IncrementOrDecrement() {
         BaseExpr left = primary();
-        Token operand = prev();
+        int operand = this.currentIndex - 1;
         if (nextMatch(PLUS_PLUS)) {
-            return new Increment(left, operand);
+            return new Increment(left, this.tokens.token(operand));
         } else if (nextMatch(MINUS_MINUS)) {
-            return new Decrement(left, operand);
-        } else {
-            // The outer loop supports currying
-            while (true) {
-                if (nextMatch(LEFT_PAREN)) {
-                    left = parseArgsAndCreateCall(left, operand);
-                } else {
-                    break;
-                }
-            }
+            return new Decrement(left, this.tokens.token(operand));
         }
         return left;
     }
 
-    private FunCall parseArgsAndCreateCall(BaseExpr left, Token operand) {
+    private boolean isAtEnd() {
+        return available(this.currentIndex) && this.tokens.type(this.currentIndex) == EOF;
+    }
+
+    private FunCall parseArgsAndCreateCall(BaseExpr left, int operand) {
         List<BaseExpr> arguments = new ArrayList<>();
         if (!checkCurrentTokenType(RIGHT_PAREN)) {
             BaseExpr argument = expressionOrLambda();
@@ -341,7 +446,7 @@ public class Parser {
             try {
                 nextArg = expressionOrLambda();
             } catch (ParseError e) {
-                String fnName = operand.lexeme;
+                String fnName = this.tokens.lexeme(operand);
                 throw new ParseError("Error: No valid argument provided after ',' in function call '" + fnName + "'");
             }
             arguments.add(nextArg);
@@ -363,61 +468,94 @@ public class Parser {
         return funDeclaration(true);
     }
 
-    private boolean nextMatch(TokenType... types) {
-        if (this.currentIndex >= this.tokenStream.size()) return false;
-        for (TokenType type : types) {
-            if (checkCurrentTokenType(type)) {
-                advance();
-                return true;
-            }
-        }
-        return false;
+    /**
+     * The type of the current token, or EOF when there is none.
+     */
+    private TokenType peekType() {
+        return available(this.currentIndex) ? this.tokens.type(this.currentIndex) : EOF;
+    }
+
+    private boolean nextMatch(TokenType type) {
+        if (peekType() != type) return false;
+        advance();
+        return true;
+    }
+
+    /**
+     * Matches any token in a set built with bit(), eg. UNARY_OPERATORS.
+     */
+    private boolean nextMatch(long types) {
+        if ((types & bit(peekType())) == 0) return false;
+        advance();
+        return true;
+    }
+
+    private static long bit(TokenType type) {
+        return 1L << type.ordinal();
     }
 
     private boolean checkCurrentTokenType(TokenType type) {
-        if (this.currentIndex >= this.tokenStream.size()) return false;
-        Token current = this.tokenStream.get(this.currentIndex);
-        return current.tokenType.equals(type);
+        return peekType() == type;
     }
 
     private void advance() {
-        if (this.currentIndex < this.tokenStream.size()) {
+        if (available(this.currentIndex)) {
             this.currentIndex++;
         }
     }
 
     private BaseExpr primary() {
-        if (nextMatch(TokenType.FALSE)) return new Literal(false);
-        if (nextMatch(TokenType.TRUE)) return new Literal(true);
-        if (nextMatch(TokenType.NIL)) return new Literal(null);
-        if (nextMatch(TokenType.NUMBER, TokenType.STRING)) {
-            return new Literal(prev().literal);
+        switch (peekType()) {
+            case FALSE:
+                advance();
+                return new Literal(false);
+            case TRUE:
+                advance();
+                return new Literal(true);
+            case NIL:
+                advance();
+                return new Literal(null);
+            case NUMBER:
+            case STRING:
+                advance();
+                return new Literal(this.tokens.literal(this.currentIndex - 1));
+            case IDENTIFIER:
+                advance();
+                return new VarExpr(prev());
+            case LEFT_PAREN: {
+                // Handle parenthesis grouping
+                advance();
+                BaseExpr expr = expression();
+                consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                return new Grouping(expr);
+            }
+            default:
+                throw new ParseError("ParserError: Cannot parse the expression: " + peekToken().lexeme);
         }
+    }
 
-        if (nextMatch(IDENTIFIER)) {
-            return new VarExpr(prev());
+    private void consume(TokenType tokenType, String msg) {
+        if (!nextMatch(tokenType)) {
+            throw consumeError(tokenType, msg);
         }
+    }
 
-        // Handle parenthesis grouping
-        if (nextMatch(TokenType.LEFT_PAREN)) {
-            BaseExpr expr = term();
-            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-            return new Grouping(expr);
+    /**
+     * Like consume, for a message which ends with the expression before the token:
+     * the expression is only turned into a String if the token is missing.
+     */
+    private void consume(TokenType tokenType, String msg, BaseExpr expr) {
+        if (!nextMatch(tokenType)) {
+            throw consumeError(tokenType, msg + expr);
         }
-        throw new ParseError("ParserError: Cannot parse the expression: " + peekToken().lexeme);
     }
 
-    private void consume(TokenType tokenType, String msg) {
-        Token peekedToken = peekToken();
-        if (peekedToken == null) {
-            throw new ParseError(msg); // TODO
-        }
-        if (peekToken().tokenType == tokenType) {
-            advance();
-            return;
+    private ParseError consumeError(TokenType tokenType, String msg) {
+        if (!available(this.currentIndex)) {
+            return new ParseError(msg); // TODO
         }
         System.out.println("Tried to consume: '" + tokenType + "' but got: '" + peekToken().lexeme + "'");
-        throw parseError(peekToken(), msg); // TODO
+        return parseError(peekToken(), msg); // TODO
     }
 
     private ParseError parseError(Token token, String message) {
@@ -427,72 +565,15 @@ public class Parser {
 
 
     private Token prev() {
-        return this.tokenStream.get(this.currentIndex - 1);
-    }
-
-    // Iterative Algorithm to parse binary expressions: precedence climbing
-    // Assumes com.gill.jlox.tokens know (or can deduce) their precedence and associativity
-    SyntaxTree parseIterative(List<Token> tokenStream) {
-        try {
-            this.currentIndex = 0; // Ensure we always start from the beginning
-            this.tokenStream = tokenStream;
-            BaseExpr root = precedenceClimbing(parsePrimary(), 0);
-            return new SyntaxTree(root);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    private BaseExpr parsePrimary() {
-        Token nextToken = this.tokenStream.get(currentIndex++);
-        if (nextToken.tokenType == TokenType.NUMBER) {
-            return new Literal(prev().literal);
-        }
-        throw new RuntimeException("Unexpected symbol: " + prev().lexeme);
-    }
-
-    private BaseExpr precedenceClimbing(BaseExpr left, Integer minPrecedence) {
-        while (true) {
-            Token op = peekToken();
-            if (!isOp(op) || op.precedence < minPrecedence) {
-                break;
-            }
-            this.currentIndex++;
-            BaseExpr right = parsePrimary();
-            while (true) {
-                Token lookahead = peekToken();
-                if (!isOp(lookahead) ||
-                    lookahead.precedence > op.precedence ||
-                    lookahead.assoc == Associativity.RIGHT &&
-                    lookahead.precedence.equals(op.precedence)
-                ) {
-                    break;
-                } else {
-                    right = precedenceClimbing(right, lookahead.precedence);
-                }
-            }
-            return new Binary(left, op, right);
-        }
-        return left;
-    }
-
-    private boolean isOp(Token op) {
-        return op != null && (
-                op.tokenType == PLUS
-                || op.tokenType == MINUS
-                || op.tokenType == STAR
-                || op.tokenType == SLASH
-                || op.tokenType == PERCENT
-        );
+        return this.tokens.token(this.currentIndex - 1);
     }
 
     private Token peekToken() {
-        if (this.currentIndex >= this.tokenStream.size()) {
+        if (!available(this.currentIndex)) {
             // throw new RuntimeException("Too far ahead, out of bounds");
             return null;
         }
-        return this.tokenStream.get(this.currentIndex);
+        return this.tokens.token(this.currentIndex);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,549 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.ast.expressions.*;
+import com.gill.jlox.ast.statements.*;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static pass which runs after parsing and before evaluation (see resolver.md).
+ * It walks the AST once, mirroring the scopes the Evaluator will create at runtime,
+ * and annotates every variable reference with the (depth, slot) pair where
+ * its value will live. Blocks and functions are annotated with the number of
+ * slots they need, so the Evaluator can allocate array-backed Environments.
+ *
+ * Not every block gets an Environment of its own (slotCount 0, see visitBlockStmt):
+ *  - a block which declares nothing, like the one the Parser wraps around a `for`
+ *    loop's body and increment, runs in the enclosing environment;
+ *  - a block in a loop body whose variables no closure can capture keeps them in
+ *    slots of the enclosing environment, so an iteration doesn't allocate a new one.
+ * Either way, env() in such a block shows the enclosing environment. A hoisted
+ * block's own variables are not listed: their slots carry no name, so that
+ * by-name (DYNAMIC) lookups can't find them.
+ *
+ * References which don't resolve to a local come in two kinds:
+ *  - GLOBAL : no enclosing scope declares the name, so it can only be a global.
+ *  - DYNAMIC: an enclosing scope declares the name, but only _after_ this point
+ *             (eg. closures.lox or leaky_closures.lox). These keep the old
+ *             walk-the-chain-by-name behaviour.
+ */
+public class Resolver implements BaseVisitor, BaseStmtVisitor {
+
+    public static final int GLOBAL = -1;
+    public static final int DYNAMIC = -2;
+
+    private static class Scope {
+        final Map<String, Integer> slots = new HashMap<>();
+        // Every name declared directly in this scope, including the ones we haven't reached yet.
+        final Set<String> declaresLater;
+        // For a block whose variables live in an enclosing scope's environment, that scope.
+        final Scope host;
+        int nextSlot = 0;
+
+        Scope(Set<String> declaresLater, Scope host) {
+            this.declaresLater = declaresLater;
+            this.host = host;
+        }
+
+        Scope(Scope scope) {
+            this.slots.putAll(scope.slots);
+            this.declaresLater = scope.declaresLater;
+            this.host = scope.host;
+            this.nextSlot = scope.nextSlot;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+    // Function bodies we're in; a `return` outside one doesn't return from a call.
+    private int functionDepth = 0;
+    // Loop bodies we're in, in the current function.
+    private int loopDepth = 0;
+    // Index in scopes of the current function's own scope (0 outside functions).
+    private int functionScope = 0;
+    // Blocks we're in whose variables are hoisted into an enclosing scope's environment.
+    private int hoistedDepth = 0;
+    // Whether the function being resolved could find its own locals by name at runtime:
+    // through a DYNAMIC reference, or by calling env().
+    private boolean findsLocalsByName = false;
+
+    public Resolver() {
+    }
+
+    // Picks up where another Resolver was, for a function body which is resolved later.
+    private Resolver(List<Scope> scopes) {
+        this.scopes.addAll(scopes);
+    }
+
+    public void resolve(List<BaseStmt> statements) throws RuntimeError {
+        for (BaseStmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(BaseStmt stmt) throws RuntimeError {
+        if (stmt == null) return;
+        stmt.accept(this);
+    }
+
+    private void resolve(BaseExpr expr) throws RuntimeError {
+        if (expr == null) return;
+        expr.accept(this);
+    }
+
+    private void beginScope(Set<String> declarations) {
+        scopes.add(new Scope(declarations, null));
+    }
+
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).nextSlot;
+    }
+
+    private int declare(String name) {
+        if (scopes.isEmpty()) return -1;
+        Scope scope = scopes.get(scopes.size() - 1);
+        Integer existing = scope.slots.get(name);
+        if (existing != null) {
+            // Re-declaration in the same scope (eg. `var a` shadowing parameter `a`) re-uses the slot.
+            return existing;
+        }
+        Scope owner = scope.host != null ? scope.host : scope;
+        int slot = owner.nextSlot++;
+        scope.slots.put(name, slot);
+        return slot;
+    }
+
+    /**
+     * Returns {depth, slot} for a local, or {GLOBAL|DYNAMIC, -1} otherwise.
+     */
+    private int[] resolveLocal(Token name) {
+        boolean declaredLater = false;
+        int depth = 0;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            Integer slot = scope.slots.get(name.lexeme);
+            if (slot != null) {
+                if (declaredLater) break;
+                return new int[]{depth, slot};
+            }
+            // In a block whose variables are hoisted there is no function between here and the
+            // current function's scope, so everything up to there runs in program order: a name
+            // declared later in one of those scopes can't be bound yet when this runs, and the
+            // reference is to what's visible now. Looking it up by name instead would miss a
+            // hoisted variable, whose slot doesn't carry its name.
+            boolean inOrder = hoistedDepth > 0 && i >= functionScope;
+            if (!inOrder && scope.declaresLater.contains(name.lexeme)) {
+                declaredLater = true;
+            }
+            if (scope.host == null) {
+                // Only scopes with an Environment of their own are a step up the chain at runtime.
+                depth++;
+            }
+        }
+        if (declaredLater) {
+            // The lookup walks the environments by name, and may well find a local of this function.
+            findsLocalsByName = true;
+            return new int[]{DYNAMIC, -1};
+        }
+        return new int[]{GLOBAL, -1};
+    }
+
+    private static Set<String> declarationsIn(List<BaseStmt> statements) {
+        Set<String> names = new HashSet<>();
+        for (BaseStmt stmt : statements) {
+            if (stmt instanceof VarStmt varStmt) {
+                names.add(varStmt.name.lexeme);
+            } else if (stmt instanceof FunStmt funStmt) {
+                names.add(funStmt.funIdentifier.lexeme);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Whether a block's variables can live in the enclosing environment: that's the case
+     * when there is no function in the block which could capture them. Declarations only
+     * ever appear directly in a block, so each time the block runs its `var` statements
+     * (re)initialize their slots before anything else reads them.
+     */
+    private static boolean canHost(List<BaseStmt> statements) throws RuntimeError {
+        FunctionFinder finder = new FunctionFinder();
+        for (BaseStmt stmt : statements) {
+            if (finder.contains(stmt)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resolveFunction(FunStmt funStmt) throws RuntimeError {
+        if (!funStmt.isParsed()) {
+            // The Parser skipped the body (--lazy-parse): resolve it once it is parsed, against a
+            // copy of the scopes as they are here. The body only ever reads the enclosing scopes,
+            // so that gives the same annotations as resolving it now would.
+            List<Scope> snapshot = new ArrayList<>(scopes.size());
+            for (Scope scope : scopes) {
+                snapshot.add(new Scope(scope));
+            }
+            FunStmt.DeferredBody parse = funStmt.deferredBody;
+            funStmt.deferredBody = () -> {
+                List<BaseStmt> body = parse.parse();
+                new Resolver(snapshot).resolveFunction(funStmt, body);
+                return body;
+            };
+            return;
+        }
+        resolveFunction(funStmt, funStmt.body());
+    }
+
+    private void resolveFunction(FunStmt funStmt, List<BaseStmt> body) throws RuntimeError {
+        Set<String> declarations = declarationsIn(body);
+        for (Object param : funStmt.parameters) {
+            declarations.add(((Token) param).lexeme);
+        }
+        beginScope(declarations);
+        Scope scope = scopes.get(scopes.size() - 1);
+        // Parameters are bound positionally by LoxFunction.call, so slot i is parameter i.
+        for (int i = 0; i < funStmt.parameters.size(); i++) {
+            scope.slots.put(((Token) funStmt.parameters.get(i)).lexeme, i);
+        }
+        scope.nextSlot = funStmt.parameters.size();
+        int enclosingLoopDepth = loopDepth;
+        int enclosingFunctionScope = functionScope;
+        boolean enclosingFindsLocalsByName = findsLocalsByName;
+        functionDepth++;
+        loopDepth = 0;
+        functionScope = scopes.size() - 1;
+        findsLocalsByName = false;
+        resolve(body);
+        funStmt.localsEscape = findsLocalsByName || !canHost(body);
+        functionDepth--;
+        loopDepth = enclosingLoopDepth;
+        functionScope = enclosingFunctionScope;
+        findsLocalsByName = enclosingFindsLocalsByName;
+        funStmt.slotCount = endScope();
+    }
+
+    @Override
+    public Object visitGrouping(Grouping tGrouping) throws RuntimeError {
+        resolve(tGrouping.expr);
+        return null;
+    }
+
+    @Override
+    public Object visitUnary(Unary tUnary) throws RuntimeError {
+        resolve(tUnary.right);
+        return null;
+    }
+
+    @Override
+    public Object visitLiteral(Literal tLiteral) {
+        return null;
+    }
+
+    @Override
+    public Object visitBinary(Binary tBinary) throws RuntimeError {
+        resolve(tBinary.left);
+        resolve(tBinary.right);
+        return null;
+    }
+
+    @Override
+    public Object visitVarExpr(VarExpr varExpr) {
+        int[] location = resolveLocal(varExpr.name);
+        varExpr.depth = location[0];
+        varExpr.slot = location[1];
+        if (location[0] == GLOBAL && varExpr.name.lexeme.equals("env")) {
+            // The built-in hands out the environment it is called in.
+            findsLocalsByName = true;
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitAssignExpr(AssignExpr assignExpr) throws RuntimeError {
+        resolve(assignExpr.value);
+        int[] location = resolveLocal(assignExpr.name);
+        assignExpr.depth = location[0];
+        assignExpr.slot = location[1];
+        return null;
+    }
+
+    @Override
+    public Object visitLogicalExpr(LogicalExpr logicalExpr) throws RuntimeError {
+        resolve(logicalExpr.lhs);
+        resolve(logicalExpr.rhs);
+        return null;
+    }
+
+    @Override
+    public Object visitIncrement(Increment increment) throws RuntimeError {
+        resolve(increment.expr);
+        int[] location = resolveLocal(increment.operandToken);
+        increment.depth = location[0];
+        increment.slot = location[1];
+        return null;
+    }
+
+    @Override
+    public Object visitDecrement(Decrement decrement) throws RuntimeError {
+        resolve(decrement.expr);
+        int[] location = resolveLocal(decrement.token);
+        decrement.depth = location[0];
+        decrement.slot = location[1];
+        return null;
+    }
+
+    @Override
+    public Object visitCallExpr(FunCall funCall) throws RuntimeError {
+        resolve(funCall.callee);
+        for (Object arg : funCall.args) {
+            resolve((BaseExpr) arg);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitLambdaExpr(LambdaExpr lambdaExpr) throws RuntimeError {
+        resolveFunction(lambdaExpr.loxLambda);
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
+        resolve(exprStmt.expression);
+        return null;
+    }
+
+    @Override
+    public Object visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
+        resolve(printStmt.expression);
+        return null;
+    }
+
+    @Override
+    public Object visitVarStmt(VarStmt varStmt) throws RuntimeError {
+        // Initializer first: in `var a = a;` the right-hand side still refers to the outer `a`.
+        resolve(varStmt.initializer);
+        varStmt.slot = declare(varStmt.name.lexeme);
+        varStmt.hoisted = !scopes.isEmpty() && scopes.get(scopes.size() - 1).host != null;
+        return null;
+    }
+
+    @Override
+    public Object visitBlockStmt(BlockStmt blockStmt) throws RuntimeError {
+        List<BaseStmt> statements = blockStmt.statements;
+        Set<String> declarations = declarationsIn(statements);
+        if (declarations.isEmpty()) {
+            resolve(statements);
+            blockStmt.slotCount = 0;
+            return null;
+        }
+        if (loopDepth > 0 && !scopes.isEmpty() && canHost(statements)) {
+            // A fresh scope every iteration only matters to a closure, and there is none.
+            // Outside loops this isn't worth it: the enclosing environment would get the
+            // extra slots every time it is created, whether the block runs or not.
+            Scope enclosing = scopes.get(scopes.size() - 1);
+            scopes.add(new Scope(declarations, enclosing.host != null ? enclosing.host : enclosing));
+            hoistedDepth++;
+            resolve(statements);
+            hoistedDepth--;
+            scopes.remove(scopes.size() - 1);
+            blockStmt.slotCount = 0;
+            return null;
+        }
+        beginScope(declarations);
+        resolve(statements);
+        blockStmt.slotCount = endScope();
+        return null;
+    }
+
+    @Override
+    public Object visitIfStmt(IfStmt ifStmt) throws RuntimeError {
+        resolve(ifStmt.condition);
+        resolve(ifStmt.thenBranch);
+        resolve(ifStmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Object visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
+        resolve(whileStmt.condition);
+        loopDepth++;
+        resolve(whileStmt.body);
+        loopDepth--;
+        return null;
+    }
+
+    @Override
+    public Object visitForStmt(ForStmt forStmt) throws RuntimeError {
+        resolve(forStmt.condition);
+        loopDepth++;
+        resolve(forStmt.body);
+        loopDepth--;
+        return null;
+    }
+
+    @Override
+    public Object visitBreakStmt(BreakStmt breakStmt) {
+        return null;
+    }
+
+    @Override
+    public Object visitFunStmt(FunStmt funStmt) throws RuntimeError {
+        // Declare the name before the body, so the function can refer to itself.
+        funStmt.slot = declare(funStmt.funIdentifier.lexeme);
+        resolveFunction(funStmt);
+        return null;
+    }
+
+    @Override
+    public Object visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+        resolve(returnStmt.returnValue);
+        BaseExpr value = returnStmt.returnValue;
+        while (value instanceof Grouping grouping) {
+            value = grouping.expr;
+        }
+        returnStmt.tailCall = functionDepth > 0 && value instanceof FunCall funCall ? funCall : null;
+        return null;
+    }
+
+    /**
+     * Looks for a function declaration or lambda anywhere in a statement, ie. something
+     * which could capture the environment the statement runs in.
+     */
+    private static class FunctionFinder implements BaseVisitor, BaseStmtVisitor {
+
+        boolean contains(BaseStmt stmt) throws RuntimeError {
+            return stmt != null && (Boolean) stmt.accept(this);
+        }
+
+        boolean contains(BaseExpr expr) throws RuntimeError {
+            return expr != null && (Boolean) expr.accept(this);
+        }
+
+        @Override
+        public Object visitGrouping(Grouping tGrouping) throws RuntimeError {
+            return contains(tGrouping.expr);
+        }
+
+        @Override
+        public Object visitUnary(Unary tUnary) throws RuntimeError {
+            return contains(tUnary.right);
+        }
+
+        @Override
+        public Object visitLiteral(Literal tLiteral) {
+            return false;
+        }
+
+        @Override
+        public Object visitBinary(Binary tBinary) throws RuntimeError {
+            return contains(tBinary.left) || contains(tBinary.right);
+        }
+
+        @Override
+        public Object visitVarExpr(VarExpr varExpr) {
+            return false;
+        }
+
+        @Override
+        public Object visitAssignExpr(AssignExpr assignExpr) throws RuntimeError {
+            return contains(assignExpr.value);
+        }
+
+        @Override
+        public Object visitLogicalExpr(LogicalExpr logicalExpr) throws RuntimeError {
+            return contains(logicalExpr.lhs) || contains(logicalExpr.rhs);
+        }
+
+        @Override
+        public Object visitIncrement(Increment increment) throws RuntimeError {
+            return contains(increment.expr);
+        }
+
+        @Override
+        public Object visitDecrement(Decrement decrement) throws RuntimeError {
+            return contains(decrement.expr);
+        }
+
+        @Override
+        public Object visitCallExpr(FunCall funCall) throws RuntimeError {
+            if (contains(funCall.callee)) {
+                return true;
+            }
+            for (Object arg : funCall.args) {
+                if (contains((BaseExpr) arg)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Object visitLambdaExpr(LambdaExpr lambdaExpr) {
+            return true;
+        }
+
+        @Override
+        public Object visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
+            return contains(exprStmt.expression);
+        }
+
+        @Override
+        public Object visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
+            return contains(printStmt.expression);
+        }
+
+        @Override
+        public Object visitVarStmt(VarStmt varStmt) throws RuntimeError {
+            return contains(varStmt.initializer);
+        }
+
+        @Override
+        public Object visitBlockStmt(BlockStmt blockStmt) throws RuntimeError {
+            for (Object stmt : blockStmt.statements) {
+                if (contains((BaseStmt) stmt)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Object visitIfStmt(IfStmt ifStmt) throws RuntimeError {
+            return contains(ifStmt.condition) || contains(ifStmt.thenBranch) || contains(ifStmt.elseBranch);
+        }
+
+        @Override
+        public Object visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
+            return contains(whileStmt.condition) || contains(whileStmt.body);
+        }
+
+        @Override
+        public Object visitForStmt(ForStmt forStmt) throws RuntimeError {
+            return contains(forStmt.condition) || contains(forStmt.body);
+        }
+
+        @Override
+        public Object visitBreakStmt(BreakStmt breakStmt) {
+            return false;
+        }
+
+        @Override
+        public Object visitFunStmt(FunStmt funStmt) {
+            return true;
+        }
+
+        @Override
+        public Object visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+            return contains(returnStmt.returnValue);
+        }
+    }
+}
@@ -0,0 +1,626 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.ast.expressions.*;
+import com.gill.jlox.ast.statements.*;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk cache of parsed scripts: `foo.lox` is stored as `foo.loxc` next to it, so the
+ * next run of an unchanged script skips the lexer and parser and reads its AST back instead.
+ *
+ * A .loxc file holds the plain parser output - what the Resolver annotates and the engines
+ * cache at runtime is recomputed on every run. Layout, all integers varints unless noted:
+ *
+ *   magic "LOXC" (4 bytes), FORMAT_VERSION
+ *   source length, CRC32C and Adler32 of the source (4 bytes each)
+ *   string count, then each string as its UTF-8 length and bytes
+ *   statement count, then each statement, prefix order
+ *
+ * A node is a tag byte followed by its fields; names, operators and string literals are
+ * indices into the string table, so a name costs a byte or two however often it is used.
+ * A token's line is stored as the difference to the line of the token before it.
+ *
+ * The checksums are only there to notice that the script changed; they are not a defence
+ * against somebody crafting a .loxc. They are used instead of a cryptographic hash because
+ * just initialising MessageDigest costs more than lexing and parsing a small script.
+ * A cache which doesn't match, can't be read or is from another format version is ignored,
+ * and overwritten after the script is parsed again.
+ */
+public class ScriptCache {
+
+    // Bump whenever the encoding or the shape of the AST changes.
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4c4f5843;
+
+    private static final byte NULL = 0;
+    private static final byte GROUPING = 1;
+    private static final byte UNARY = 2;
+    private static final byte LITERAL = 3;
+    private static final byte BINARY = 4;
+    private static final byte VARIABLE = 5;
+    private static final byte ASSIGN = 6;
+    private static final byte LOGICAL = 7;
+    private static final byte INCREMENT = 8;
+    private static final byte DECREMENT = 9;
+    private static final byte CALL = 10;
+    private static final byte LAMBDA = 11;
+    private static final byte EXPRESSION_STMT = 20;
+    private static final byte PRINT_STMT = 21;
+    private static final byte VAR_STMT = 22;
+    private static final byte BLOCK_STMT = 23;
+    private static final byte IF_STMT = 24;
+    private static final byte WHILE_STMT = 25;
+    private static final byte BREAK_STMT = 26;
+    private static final byte FUN_STMT = 27;
+    private static final byte RETURN_STMT = 28;
+
+    // Kinds of Literal value.
+    private static final byte NIL_VALUE = 0;
+    private static final byte FALSE_VALUE = 1;
+    private static final byte TRUE_VALUE = 2;
+    private static final byte NUMBER_VALUE = 3;
+    private static final byte STRING_VALUE = 4;
+    // A number which is a small non-negative integer, as a varint instead of 8 bytes.
+    private static final byte INTEGER_VALUE = 5;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    public static Path cacheFile(Path script) {
+        String name = script.getFileName().toString();
+        String base = name.endsWith(".lox") ? name.substring(0, name.length() - 4) : name;
+        return script.resolveSibling(base + ".loxc");
+    }
+
+    /**
+     * The statements cached for script, or null if there is no usable cache for this source.
+     */
+    public static List<BaseStmt> load(Path script, ByteBuffer source) {
+        Path file = cacheFile(script);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != MAGIC || readVarInt(in) != FORMAT_VERSION) {
+                return null;
+            }
+            if (readVarInt(in) != source.limit() || in.getInt() != crc32c(source) || in.getInt() != adler32(source)) {
+                return null;
+            }
+            return new Reader(in).statements();
+        } catch (IOException | RuntimeException e) {
+            // Truncated or garbled: parse the script as if there were no cache.
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache for script. Failing to (eg. in a read-only directory) is not an error;
+     * the next run just parses the script again.
+     */
+    public static void store(Path script, ByteBuffer source, List<BaseStmt> statements) {
+        Writer writer = new Writer();
+        for (BaseStmt statement : statements) {
+            writer.write(statement);
+        }
+        Output out = new Output();
+        out.putInt(MAGIC);
+        out.putVarInt(FORMAT_VERSION);
+        out.putVarInt(source.limit());
+        out.putInt(crc32c(source));
+        out.putInt(adler32(source));
+        out.putVarInt(writer.strings.size());
+        for (String s : writer.strings) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.putVarInt(utf8.length);
+            out.put(utf8, utf8.length);
+        }
+        out.putVarInt(statements.size());
+        out.put(writer.out.bytes, writer.out.size);
+
+        Path file = cacheFile(script);
+        // Written aside and renamed into place, so a concurrent run never reads half a file.
+        Path temp = file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            Files.write(temp, Arrays.copyOf(out.bytes, out.size));
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Nothing more we can do about it.
+            }
+        }
+    }
+
+    private static int crc32c(ByteBuffer source) {
+        CRC32C crc = new CRC32C();
+        crc.update(source.duplicate().clear().limit(source.limit()));
+        return (int) crc.getValue();
+    }
+
+    private static int adler32(ByteBuffer source) {
+        Adler32 adler = new Adler32();
+        adler.update(source.duplicate().clear().limit(source.limit()));
+        return (int) adler.getValue();
+    }
+
+    // Whether the varint of (int) d reads back as exactly d (so not -0.0).
+    private static boolean isSmallInteger(double d) {
+        return d >= 0 && d <= Integer.MAX_VALUE && (int) d == d && Double.doubleToRawLongBits(d) != Double.doubleToRawLongBits(-0.0);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            if (shift > 28) {
+                throw new IllegalStateException("Malformed varint");
+            }
+        }
+    }
+
+    /**
+     * A growable byte array, so writing needs no stream (and no IOException).
+     */
+    private static class Output {
+        byte[] bytes = new byte[4096];
+        int size = 0;
+
+        void putByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void put(byte[] b, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + length));
+            }
+            System.arraycopy(b, 0, bytes, size, length);
+            size += length;
+        }
+
+        void putVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                putByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            putByte(value);
+        }
+
+        void putInt(int value) {
+            putByte(value >>> 24);
+            putByte(value >>> 16);
+            putByte(value >>> 8);
+            putByte(value);
+        }
+
+        void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+    }
+
+    private static class Writer implements BaseVisitor, BaseStmtVisitor {
+        final Output out = new Output();
+        final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private int line = 0;
+
+        void write(BaseStmt stmt) {
+            if (stmt == null) {
+                out.putByte(NULL);
+                return;
+            }
+            try {
+                stmt.accept(this);
+            } catch (RuntimeError e) {
+                // Writing never fails; accept just declares it.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void write(BaseExpr expr) {
+            if (expr == null) {
+                out.putByte(NULL);
+                return;
+            }
+            try {
+                expr.accept(this);
+            } catch (RuntimeError e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void write(List<BaseStmt> statements) {
+            out.putVarInt(statements.size());
+            for (BaseStmt stmt : statements) {
+                write(stmt);
+            }
+        }
+
+        void writeString(String s) {
+            Integer index = stringIndex.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndex.put(s, index);
+            }
+            out.putVarInt(index);
+        }
+
+        // Tokens in the AST are names, operators and punctuation; their literal is always null.
+        void writeToken(Token token) {
+            if (token == null) {
+                out.putByte(NULL);
+                return;
+            }
+            out.putByte(token.tokenType.ordinal() + 1);
+            writeString(token.lexeme);
+            // Zigzag, so a step back to an earlier line stays short too.
+            int delta = token.line - line;
+            out.putVarInt((delta << 1) ^ (delta >> 31));
+            line = token.line;
+        }
+
+        void writeFunction(FunStmt funStmt) throws RuntimeError {
+            writeToken(funStmt.funIdentifier);
+            out.putVarInt(funStmt.parameters.size());
+            for (Object param : funStmt.parameters) {
+                writeToken((Token) param);
+            }
+            write(funStmt.body());
+        }
+
+        @Override
+        public Object visitGrouping(Grouping grouping) {
+            out.putByte(GROUPING);
+            write(grouping.expr);
+            return null;
+        }
+
+        @Override
+        public Object visitUnary(Unary unary) {
+            out.putByte(UNARY);
+            writeToken(unary.operator);
+            write(unary.right);
+            return null;
+        }
+
+        @Override
+        public Object visitLiteral(Literal literal) {
+            out.putByte(LITERAL);
+            Object value = literal.value;
+            if (value == null) {
+                out.putByte(NIL_VALUE);
+            } else if (value instanceof Boolean b) {
+                out.putByte(b ? TRUE_VALUE : FALSE_VALUE);
+            } else if (value instanceof Double d && isSmallInteger(d)) {
+                out.putByte(INTEGER_VALUE);
+                out.putVarInt(d.intValue());
+            } else if (value instanceof Double d) {
+                out.putByte(NUMBER_VALUE);
+                out.putLong(Double.doubleToRawLongBits(d));
+            } else {
+                out.putByte(STRING_VALUE);
+                writeString((String) value);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitBinary(Binary binary) {
+            out.putByte(BINARY);
+            write(binary.left);
+            writeToken(binary.operator);
+            write(binary.right);
+            return null;
+        }
+
+        @Override
+        public Object visitVarExpr(VarExpr varExpr) {
+            out.putByte(VARIABLE);
+            writeToken(varExpr.name);
+            return null;
+        }
+
+        @Override
+        public Object visitAssignExpr(AssignExpr assignExpr) {
+            out.putByte(ASSIGN);
+            writeToken(assignExpr.name);
+            write(assignExpr.value);
+            return null;
+        }
+
+        @Override
+        public Object visitLogicalExpr(LogicalExpr logicalExpr) {
+            out.putByte(LOGICAL);
+            write(logicalExpr.lhs);
+            writeToken(logicalExpr.operator);
+            write(logicalExpr.rhs);
+            return null;
+        }
+
+        @Override
+        public Object visitIncrement(Increment increment) {
+            out.putByte(INCREMENT);
+            write(increment.expr);
+            writeToken(increment.operandToken);
+            return null;
+        }
+
+        @Override
+        public Object visitDecrement(Decrement decrement) {
+            out.putByte(DECREMENT);
+            write(decrement.expr);
+            writeToken(decrement.token);
+            return null;
+        }
+
+        @Override
+        public Object visitCallExpr(FunCall funCall) {
+            out.putByte(CALL);
+            write(funCall.callee);
+            writeToken(funCall.closingParen);
+            out.putVarInt(funCall.args.size());
+            for (Object arg : funCall.args) {
+                write((BaseExpr) arg);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitLambdaExpr(LambdaExpr lambdaExpr) throws RuntimeError {
+            out.putByte(LAMBDA);
+            writeFunction(lambdaExpr.loxLambda);
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionStmt(ExprStmt exprStmt) {
+            out.putByte(EXPRESSION_STMT);
+            write(exprStmt.expression);
+            return null;
+        }
+
+        @Override
+        public Object visitPrintStmt(PrintStmt printStmt) {
+            out.putByte(PRINT_STMT);
+            write(printStmt.expression);
+            return null;
+        }
+
+        @Override
+        public Object visitVarStmt(VarStmt varStmt) {
+            out.putByte(VAR_STMT);
+            writeToken(varStmt.name);
+            write(varStmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Object visitBlockStmt(BlockStmt blockStmt) {
+            out.putByte(BLOCK_STMT);
+            write(blockStmt.statements);
+            return null;
+        }
+
+        @Override
+        public Object visitIfStmt(IfStmt ifStmt) {
+            out.putByte(IF_STMT);
+            write(ifStmt.condition);
+            write(ifStmt.thenBranch);
+            write(ifStmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Object visitWhileStmt(WhileStmt whileStmt) {
+            out.putByte(WHILE_STMT);
+            write(whileStmt.condition);
+            write(whileStmt.body);
+            return null;
+        }
+
+        @Override
+        public Object visitForStmt(ForStmt forStmt) {
+            // The Parser turns for loops into while loops.
+            throw new IllegalStateException("ForStmt is never produced by the Parser");
+        }
+
+        @Override
+        public Object visitBreakStmt(BreakStmt breakStmt) {
+            out.putByte(BREAK_STMT);
+            return null;
+        }
+
+        @Override
+        public Object visitFunStmt(FunStmt funStmt) throws RuntimeError {
+            out.putByte(FUN_STMT);
+            writeFunction(funStmt);
+            return null;
+        }
+
+        @Override
+        public Object visitReturnStmt(ReturnStmt returnStmt) {
+            out.putByte(RETURN_STMT);
+            write(returnStmt.returnValue);
+            return null;
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer in;
+        private final String[] strings;
+        // Names are compared by reference at runtime (see Environment), so they are interned like the lexer's.
+        private final boolean[] interned;
+        private int line = 0;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+            this.strings = new String[readVarInt(in)];
+            this.interned = new boolean[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVarInt(in);
+                strings[i] = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+        }
+
+        List<BaseStmt> statements() {
+            int count = readVarInt(in);
+            List<BaseStmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalStateException("Trailing bytes in cache file");
+            }
+            return statements;
+        }
+
+        private List<BaseStmt> block() {
+            int count = readVarInt(in);
+            List<BaseStmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Token token() {
+            int type = in.get();
+            if (type == NULL) {
+                return null;
+            }
+            int index = readVarInt(in);
+            if (type - 1 == TokenType.IDENTIFIER.ordinal() && !interned[index]) {
+                strings[index] = strings[index].intern();
+                interned[index] = true;
+            }
+            int delta = readVarInt(in);
+            line += (delta >>> 1) ^ -(delta & 1);
+            return new Token(strings[index], TOKEN_TYPES[type - 1], null, line);
+        }
+
+        private FunStmt function() {
+            Token name = token();
+            int count = readVarInt(in);
+            List<Token> parameters = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                parameters.add(token());
+            }
+            return new FunStmt(name, parameters, block());
+        }
+
+        private Object value() {
+            byte kind = in.get();
+            switch (kind) {
+                case NIL_VALUE: return null;
+                case FALSE_VALUE: return false;
+                case TRUE_VALUE: return true;
+                case NUMBER_VALUE: return Double.longBitsToDouble(in.getLong());
+                case INTEGER_VALUE: return (double) readVarInt(in);
+                case STRING_VALUE: return strings[readVarInt(in)];
+                default: throw new IllegalStateException("Unknown literal kind " + kind);
+            }
+        }
+
+        private BaseStmt statement() {
+            byte tag = in.get();
+            switch (tag) {
+                case NULL: return null;
+                case EXPRESSION_STMT: return new ExprStmt(expression());
+                case PRINT_STMT: return new PrintStmt(expression());
+                case VAR_STMT: {
+                    Token name = token();
+                    return new VarStmt(name, expression());
+                }
+                case BLOCK_STMT: return new BlockStmt(block());
+                case IF_STMT: {
+                    BaseExpr condition = expression();
+                    BaseStmt thenBranch = statement();
+                    return new IfStmt(condition, thenBranch, statement());
+                }
+                case WHILE_STMT: {
+                    BaseExpr condition = expression();
+                    return new WhileStmt(condition, statement());
+                }
+                case BREAK_STMT: return new BreakStmt();
+                case FUN_STMT: return function();
+                case RETURN_STMT: return new ReturnStmt(expression());
+                default: throw new IllegalStateException("Unknown statement tag " + tag);
+            }
+        }
+
+        private BaseExpr expression() {
+            byte tag = in.get();
+            switch (tag) {
+                case NULL: return null;
+                case GROUPING: return new Grouping(expression());
+                case UNARY: {
+                    Token operator = token();
+                    return new Unary(operator, expression());
+                }
+                case LITERAL: return new Literal(value());
+                case BINARY: {
+                    BaseExpr left = expression();
+                    Token operator = token();
+                    return new Binary(left, operator, expression());
+                }
+                case VARIABLE: return new VarExpr(token());
+                case ASSIGN: {
+                    Token name = token();
+                    return new AssignExpr(name, expression());
+                }
+                case LOGICAL: {
+                    BaseExpr lhs = expression();
+                    Token operator = token();
+                    return new LogicalExpr(lhs, operator, expression());
+                }
+                case INCREMENT: {
+                    BaseExpr expr = expression();
+                    return new Increment(expr, token());
+                }
+                case DECREMENT: {
+                    BaseExpr expr = expression();
+                    return new Decrement(expr, token());
+                }
+                case CALL: {
+                    BaseExpr callee = expression();
+                    Token closingParen = token();
+                    int count = readVarInt(in);
+                    List<BaseExpr> args = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        args.add(expression());
+                    }
+                    return new FunCall(callee, closingParen, args);
+                }
+                case LAMBDA: return new LambdaExpr(function());
+                default: throw new IllegalStateException("Unknown expression tag " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.gill.jlox.operations;
+
+import com.gill.jlox.tokens.TokenBuffer;
+
+/**
+ * Tokens scanned on demand: the Parser pulls the next token only once it needs to look
+ * at it, instead of the Lexer scanning the whole source up front (see Lexer.stream).
+ */
+public interface TokenSource {
+
+    /**
+     * The buffer tokens are scanned into.
+     */
+    TokenBuffer buffer();
+
+    /**
+     * Scans one more token into buffer(). Returns false once the EOF token is in it.
+     */
+    boolean scanNext() throws Lexer.LexerError;
+}
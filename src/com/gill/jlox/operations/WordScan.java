@@ -0,0 +1,69 @@
+package com.gill.jlox.operations;
+
+/**
+ * Byte classification eight bytes at a time ("SWAR": SIMD within a register), for
+ * ByteLexer's skip loops. A word is eight source bytes read little-endian, so byte i
+ * of the source is bits 8i..8i+7. Every mask sets the high bit (0x80) of each byte
+ * that matches and nothing else, so firstSet/firstClear can find a byte by counting
+ * trailing zeros and Long.bitCount counts matches.
+ */
+final class WordScan {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long LOWS = 0x7f7f7f7f7f7f7f7fL;
+
+    private WordScan() {
+    }
+
+    /**
+     * The bytes of word equal to b. Exact: no false positives next to a match.
+     */
+    static long equalTo(long word, char b) {
+        long x = word ^ (ONES * b);
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+
+    static long whitespace(long word) {
+        return equalTo(word, ' ') | equalTo(word, '\t') | equalTo(word, '\r') | equalTo(word, '\n');
+    }
+
+    /**
+     * The bytes of word which can continue an identifier: ASCII letters, digits and '_'.
+     */
+    static long identifier(long word) {
+        long ascii = ~word & HIGHS;
+        // Bytes below 0x80, so adding up to 0x80 to one can't carry into the next.
+        long low = word & LOWS;
+        long letters = inRange(low | (ONES * 0x20), 'a', 'z');
+        long digits = inRange(low, '0', '9');
+        return ((letters | digits) & ascii) | equalTo(word, '_');
+    }
+
+    private static long inRange(long low, char from, char to) {
+        long atLeast = low + ONES * (0x80 - from);
+        long atMost = low + ONES * (0x7f - to);
+        return atLeast & ~atMost & HIGHS;
+    }
+
+    /**
+     * Index (0-7) of the first matching byte, or 8 if none matches.
+     */
+    static int firstSet(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /**
+     * Index (0-7) of the first byte which doesn't match, or 8 if they all do.
+     */
+    static int firstClear(long mask) {
+        return firstSet(~mask & HIGHS);
+    }
+
+    /**
+     * The part of mask covering the first n bytes.
+     */
+    static long before(long mask, int n) {
+        return n == 8 ? mask : mask & ((1L << (n << 3)) - 1);
+    }
+}
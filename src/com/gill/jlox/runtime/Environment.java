@@ -5,53 +5,185 @@ import com.gill.jlox.tokens.Token;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * An Environment comes in two flavours:
+ *  - map-backed: the global scope (and any scope the Resolver never saw).
+ *    Variables are looked up by name, walking the enclosing chain.
+ *  - slot-backed: local scopes (blocks, function calls) which the Resolver
+ *    has already numbered. Variables live in a fixed-size array, and a
+ *    resolved reference reads them with (depth, slot) - no string hashing.
+ *
+ * Names are compared by reference: every name reaching the runtime is either a lexeme
+ * (interned by TokenBuffer) or a string constant in the interpreter, which Java interns.
+ *
+ * A map-backed variable is a Binding, which stays the same object for as long as the
+ * Environment lives: defining the name again only replaces its value. So code which reads
+ * or assigns a global can look its Binding up once and keep it (GlobalRef, CallSiteCache).
+ */
 public class Environment {
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Binding> values;
+    private final Object[] slots;
+    private final String[] names;
     private final Environment enclosing;
 
+    public static final class Binding {
+        public Object value;
+
+        Binding(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+    }
+
     public Environment getEnclosing() {
         return enclosing;
     }
 
     public Environment() {
         // System.out.println("[debug] created top-level, no enclosing");
-        enclosing = null;
+        this.values = new HashMap<>();
+        this.slots = null;
+        this.names = null;
+        this.enclosing = null;
     }
 
     public Environment(Environment enclosing) {
+        this.values = new HashMap<>();
+        this.slots = null;
+        this.names = null;
         this.enclosing = enclosing;
         // System.out.println("[debug] created Environment. Enclosing: " + enclosing);
     }
 
+    /**
+     * Slot-backed scope with room for exactly slotCount variables,
+     * as computed by the Resolver.
+     */
+    public Environment(Environment enclosing, int slotCount) {
+        this.values = null;
+        this.slots = new Object[slotCount];
+        this.names = new String[slotCount];
+        this.enclosing = enclosing;
+    }
+
     public void define(String name, Object value) {
-        values.put(name, value);
+        if (values != null) {
+            Binding binding = values.get(name);
+            if (binding != null) {
+                binding.value = value;
+            } else {
+                values.put(name, new Binding(value));
+            }
+            return;
+        }
+        // Unresolved declaration inside a slot-backed scope. Shouldn't happen
+        // once the Resolver has run, but re-use a slot with the same name if we can.
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null || names[i] == name) {
+                defineAt(i, name, value);
+                return;
+            }
+        }
+        throw new IllegalStateException("No free slot for '" + name + "' in " + this);
     }
 
-    public Object getEnvByToken(Token token) throws RuntimeError {
-        if (values.containsKey(token.lexeme)) {
-            return values.get(token.lexeme);
+    public void defineAt(int slot, String name, Object value) {
+        slots[slot] = value;
+        names[slot] = name;
+    }
+
+    public Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
+    public void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
         }
-        if (enclosing != null) {
-            // Walk up the food chain
-            return enclosing.getEnvByToken(token);
+        return environment;
+    }
+
+    public Object getEnvByToken(Token token) throws RuntimeError {
+        Environment current = this;
+        // Walk up the food chain
+        while (current != null) {
+            if (current.values != null) {
+                Binding binding = current.values.get(token.lexeme);
+                if (binding != null) {
+                    return binding.value;
+                }
+            } else {
+                int slot = current.slotOf(token.lexeme);
+                if (slot >= 0) {
+                    return current.slots[slot];
+                }
+            }
+            current = current.enclosing;
         }
         throw new RuntimeError("Undefined variable '" + token.lexeme + '"');
     }
 
     public void assign(Token token, Object value) throws RuntimeError {
-        if (values.containsKey(token.lexeme)) {
-            values.put(token.lexeme, value);
-            return;
-        }
-        if (enclosing != null) {
-            // Walk up the food chain
-            enclosing.assign(token, value);
-            return;
+        Environment current = this;
+        // Walk up the food chain
+        while (current != null) {
+            if (current.values != null) {
+                Binding binding = current.values.get(token.lexeme);
+                if (binding != null) {
+                    binding.value = value;
+                    return;
+                }
+            } else {
+                int slot = current.slotOf(token.lexeme);
+                if (slot >= 0) {
+                    current.slots[slot] = value;
+                    return;
+                }
+            }
+            current = current.enclosing;
         }
         throw new RuntimeError("Undefined variable '" + token.lexeme + '"');
     }
 
+    /**
+     * The Binding of a variable of this map-backed scope itself, not of the ones around it.
+     */
+    public Binding binding(Token token) throws RuntimeError {
+        Binding binding = values.get(token.lexeme);
+        if (binding == null) {
+            throw new RuntimeError("Undefined variable '" + token.lexeme + '"');
+        }
+        return binding;
+    }
+
+    private int slotOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == name) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public String toString() {
-        return this.values.toString();
+        if (values != null) {
+            return this.values.toString();
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) continue;
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(names[i]).append('=').append(slots[i]);
+        }
+        return sb.append('}').toString();
     }
 }
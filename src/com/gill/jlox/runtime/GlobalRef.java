@@ -0,0 +1,36 @@
+package com.gill.jlox.runtime;
+
+import com.gill.jlox.tokens.Token;
+
+/**
+ * One place in the code which reads or assigns a global (a GET_GLOBAL or SET_GLOBAL
+ * instruction, a compiled reference or assignment): the name, and the Binding it found
+ * the first time. After that a read or an assignment is a field access, whatever the
+ * program does to other globals in between.
+ */
+public final class GlobalRef {
+    private final Token name;
+    private Environment globals;
+    private Environment.Binding binding;
+
+    public GlobalRef(Token name) {
+        this.name = name;
+    }
+
+    public Object get(Environment globalEnv) throws RuntimeError {
+        return binding(globalEnv).value;
+    }
+
+    public void set(Environment globalEnv, Object value) throws RuntimeError {
+        binding(globalEnv).value = value;
+    }
+
+    private Environment.Binding binding(Environment globalEnv) throws RuntimeError {
+        if (globals != globalEnv) {
+            // Not found yet, or found in another run's globals.
+            binding = globalEnv.binding(name);
+            globals = globalEnv;
+        }
+        return binding;
+    }
+}
@@ -1,18 +1,30 @@
 package com.gill.jlox.runtime;
 
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.closures.ClosureCompiler;
+import com.gill.jlox.operations.ByteLexer;
 import com.gill.jlox.operations.Evaluator;
 import com.gill.jlox.operations.Lexer;
+import com.gill.jlox.operations.Optimizer;
+import com.gill.jlox.operations.ParallelLexer;
 import com.gill.jlox.operations.Parser;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.operations.ScriptCache;
 import com.gill.jlox.operations.SyntaxTree;
+import com.gill.jlox.operations.TokenSource;
 import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenBuffer;
 import com.gill.jlox.tokens.TokenType;
+import com.gill.jlox.vm.VM;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,13 +35,57 @@ public class Lox {
     static String runtimeErrorMsg;
     static Object lastOutput;
     static Evaluator evaluator = new Evaluator();
+    // Alternative execution engines, selected with --engine=vm or --engine=closure
+    static VM vm;
+    static ClosureCompiler closureCompiler;
+    // --stream: run a script one top-level declaration at a time, see runStream.
+    static boolean stream = false;
+    // --no-cache: always lex and parse the script, don't read or write its .loxc, see ScriptCache.
+    static boolean cache = true;
+    // --lazy-parse: parse function bodies on their first call, see Parser.setLazy.
+    static boolean lazyParse = false;
+    // --no-opt: run the program as parsed, without the Optimizer's rewrites.
+    static boolean optimize = true;
+    // --max-depth=N: how deep calls may nest on the VM, whose stacks grow on the heap; see VM.
+    static int maxDepth = VM.DEFAULT_MAX_FRAMES;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        List<String> scripts = new ArrayList<>();
+        String engine = "tree";
+        boolean usage = false;
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--no-cache")) {
+                cache = false;
+            } else if (arg.equals("--lazy-parse")) {
+                lazyParse = true;
+            } else if (arg.equals("--no-opt")) {
+                optimize = false;
+            } else if (arg.startsWith("--max-depth=")) {
+                try {
+                    maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+                } catch (NumberFormatException e) {
+                    maxDepth = 0;
+                }
+                usage |= maxDepth < 1;
+            } else {
+                scripts.add(arg);
+            }
+        }
+        if (usage || scripts.size() > 1 || !(engine.equals("tree") || engine.equals("vm") || engine.equals("closure"))) {
+            System.out.println("Usage: jlox [--engine=tree|vm|closure] [--stream] [--no-cache] [--lazy-parse] [--no-opt] [--max-depth=N] [script]");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+        if (engine.equals("vm")) {
+            vm = new VM(maxDepth);
+        } else if (engine.equals("closure")) {
+            closureCompiler = new ClosureCompiler();
+        }
+        if (scripts.size() == 1) {
+            runFile(scripts.get(0));
         } else {
             runPrompt();
         }
@@ -61,34 +117,74 @@ public class Lox {
 
     // Execute from a file.
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        Path script = Paths.get(path);
+        // Scan the file's bytes where they are mapped, rather than copying them onto the heap and decoding.
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (stream) {
+                    runStream(new ByteLexer().stream(bytes));
+                } else {
+                    runScript(script, bytes);
+                }
+            } catch (Lexer.LexerError e) {
+                hadError = true;
+                runtimeErrorMsg = e.getMessage();
+                System.err.println(runtimeErrorMsg);
+            }
+        }
         if (hadError) {
             System.exit(65);
         } else if (hadRuntimeError) {
+            // The engines report errors in a statement themselves; this one got out of execute().
+            System.err.println(runtimeErrorMsg);
             System.exit(70);
         }
     }
 
+    private static void runScript(Path script, MappedByteBuffer bytes) throws Lexer.LexerError {
+        // An unchanged script is read back from its .loxc instead of being lexed and parsed again.
+        List<BaseStmt> statements = cache ? ScriptCache.load(script, bytes) : null;
+        if (statements == null) {
+            // Large files are lexed on several cores; small ones just on this thread.
+            statements = parse(new ParallelLexer().scan(bytes));
+            // Writing the cache would need every skipped function body parsed, so a lazy run doesn't.
+            if (statements != null && cache && !lazyParse) {
+                ScriptCache.store(script, bytes, statements);
+            }
+        }
+        if (statements != null) {
+            run(statements, true);
+        }
+    }
+
     private static void run(String source) {
         Lexer lexer = new Lexer();
-        Parser parser = new Parser();
-
-        List<Token> tokenStream = new ArrayList<>();
         try {
-            tokenStream = lexer.scan(source);
-            tokenStream = tokenStream.subList(0, tokenStream.size());
-            if (tokenStream.size() == 1 && tokenStream.get(0).tokenType == TokenType.EOF) {
-                return;
-            }
-            // System.out.println(tokenStream);
+            run(lexer.scanToBuffer(source));
         } catch (Lexer.LexerError e) {
             hadError = true;
             runtimeErrorMsg = e.getMessage();
         }
-        if (hadError) {
-            return;
+    }
+
+    private static void run(TokenBuffer tokenStream) {
+        List<BaseStmt> statements = parse(tokenStream);
+        if (statements != null) {
+            run(statements, false);
         }
+    }
+
+    /**
+     * The statements of tokenStream, or null if there are none or it doesn't parse.
+     */
+    private static List<BaseStmt> parse(TokenBuffer tokenStream) {
+        Parser parser = new Parser();
+        parser.setLazy(lazyParse);
+        if (tokenStream.size() == 1 && tokenStream.type(0) == TokenType.EOF) {
+            return null;
+        }
+        // System.out.println(tokenStream);
         SyntaxTree ast = null;
         try {
             ast = parser.parse(tokenStream);
@@ -98,12 +194,14 @@ public class Lox {
         }
         if (hadError) {
             System.err.println(runtimeErrorMsg);
-            return;
+            return null;
         }
-        Object evalResult = null;
+        return ast.statements;
+    }
+
+    private static void run(List<BaseStmt> statements, boolean wholeProgram) {
         try {
-            evalResult = evaluator.evaluate(ast.statements);
-            lastOutput = evalResult;
+            lastOutput = execute(statements, wholeProgram);
             hadOutput = true;
         } catch (RuntimeError e) {
             hadRuntimeError = true;
@@ -111,6 +209,48 @@ public class Lox {
         }
     }
 
+    /**
+     * Parses and executes one top-level declaration at a time, so tokens and AST of a
+     * long script are dropped as soon as they have run and the first output comes
+     * right away. Statements before a syntax error have already run by the time it is found.
+     */
+    private static void runStream(TokenSource tokens) {
+        Parser parser = new Parser();
+        parser.stream(tokens);
+        try {
+            BaseStmt statement;
+            while ((statement = parser.nextDeclaration()) != null) {
+                execute(List.of(statement), false);
+            }
+        } catch (Parser.ParseError e) {
+            hadError = true;
+            runtimeErrorMsg = e.getMessage();
+            System.err.println(runtimeErrorMsg);
+        } catch (RuntimeError e) {
+            hadRuntimeError = true;
+            runtimeErrorMsg = e.getMessage();
+        }
+    }
+
+    /**
+     * Runs statements on the selected engine. wholeProgram says they are all there is, rather
+     * than one REPL line or --stream declaration, which the Optimizer needs to know to inline.
+     */
+    private static Object execute(List<BaseStmt> statements, boolean wholeProgram) throws RuntimeError {
+        if (optimize) {
+            Optimizer optimizer = new Optimizer();
+            optimizer.setInlining(wholeProgram);
+            statements = optimizer.optimize(statements);
+        }
+        new Resolver().resolve(statements);
+        if (vm != null) {
+            return vm.interpret(statements);
+        } else if (closureCompiler != null) {
+            return closureCompiler.interpret(statements);
+        }
+        return evaluator.evaluate(statements);
+    }
+
     // Error
     static void error(int line, String msg) {
         report(line, "", msg);
@@ -0,0 +1,164 @@
+package com.gill.jlox.runtime;
+
+import com.gill.jlox.tokens.Token;
+
+/**
+ * Semantics of Lox's operators, shared by every execution engine
+ * (the tree-walking Evaluator and the bytecode VM) so they can never disagree
+ * about what `1 + 2` or `"a" == "a"` evaluates to.
+ *
+ * Numbers are always Doubles at runtime (the Lexer parses NUMBER literals once),
+ * so type tests are plain instanceof checks and the maths is done on primitives.
+ */
+public final class Operators {
+
+    private Operators() {
+    }
+
+    public static Object unary(Token operator, Object right) throws RuntimeError {
+        switch (operator.tokenType) {
+            case BANG -> {
+                return !isTruthy(right);
+            }
+            case MINUS -> {
+                return negate(right);
+            }
+        }
+        // This should be unreachable
+        return null;
+    }
+
+    public static Object binary(Token operator, Object lhsResult, Object rhsResult) throws RuntimeError {
+        return switch (operator.tokenType) {
+            case PLUS -> add(lhsResult, rhsResult);
+            case MINUS -> subtract(lhsResult, rhsResult);
+            case STAR -> multiply(lhsResult, rhsResult);
+            case SLASH -> divide(lhsResult, rhsResult);
+            case PERCENT -> modulo(lhsResult, rhsResult);
+            case GREATER -> greater(lhsResult, rhsResult);
+            case GREATER_EQUAL -> greaterEqual(lhsResult, rhsResult);
+            case LESS -> less(lhsResult, rhsResult);
+            case LESS_EQUAL -> lessEqual(lhsResult, rhsResult);
+            case EQUAL_EQUAL -> isEqual(lhsResult, rhsResult);
+            case BANG_EQUAL -> !isEqual(lhsResult, rhsResult);
+            default -> throw new RuntimeError("Unsupported Operation: " + operator.lexeme);
+        };
+    }
+
+    public static Object negate(Object right) throws RuntimeError {
+        if (right instanceof Double number) {
+            return -number;
+        }
+        throw new RuntimeError("Operand must be a number.");
+    }
+
+    public static Object add(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left + right;
+        }
+        if (lhs instanceof String left && rhs instanceof String right) {
+            return left + right;
+        }
+        throw new RuntimeError("Operands must be two numbers or two strings.");
+    }
+
+    public static Object subtract(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left - right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object multiply(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left * right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object divide(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            if (right == 0) {
+                throw new RuntimeError("Unsupported Operation: Division by Zero");
+            }
+            return left / right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    /**
+     * Integer remainder: both operands are truncated towards zero first.
+     */
+    public static Object modulo(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            long divisor = (long) right.doubleValue();
+            if (divisor == 0) {
+                throw new RuntimeError("Unsupported Operation: Division by Zero");
+            }
+            return (double) ((long) left.doubleValue() % divisor);
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object greater(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left > right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object greaterEqual(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left >= right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object less(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left < right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object lessEqual(Object lhs, Object rhs) throws RuntimeError {
+        if (lhs instanceof Double left && rhs instanceof Double right) {
+            return left <= right;
+        }
+        throw operandsMustBeNumbers();
+    }
+
+    public static Object increment(Object operand) throws RuntimeError {
+        if (operand instanceof Double number) {
+            return number + 1;
+        }
+        throw new RuntimeError("Invalid data type for Increment operator");
+    }
+
+    public static Object decrement(Object operand) throws RuntimeError {
+        if (operand instanceof Double number) {
+            return number - 1;
+        }
+        throw new RuntimeError("Invalid data type for Decrement operator");
+    }
+
+    public static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    public static boolean isEqual(Object lhsResult, Object rhsResult) {
+        if (lhsResult == null && rhsResult == null) return true;
+        if (lhsResult == null) return false;
+        if (lhsResult instanceof Double left && rhsResult instanceof Double right) {
+            // Compare the primitives, so 0 == -0 like everywhere else.
+            return left.doubleValue() == right.doubleValue();
+        }
+        return lhsResult.equals(rhsResult);
+    }
+
+    private static RuntimeError operandsMustBeNumbers() {
+        return new RuntimeError("Operands must be numbers.");
+    }
+}
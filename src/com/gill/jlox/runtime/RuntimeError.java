@@ -2,6 +2,7 @@ package com.gill.jlox.runtime;
 
 public class RuntimeError extends Exception {
     public RuntimeError(String msg) {
-        super(msg);
+        // Lox errors are reported by message only, so skip capturing a Java stack trace.
+        super(msg, null, false, false);
     }
 }
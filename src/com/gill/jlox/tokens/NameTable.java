@@ -0,0 +1,85 @@
+package com.gill.jlox.tokens;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identifier names, interned straight from their range of the source. A name seen before
+ * costs a hash and a compare instead of a new String, and every occurrence of a name is
+ * the same String instance. New names also go through String.intern, so that holds across
+ * sources (REPL lines) and for the names the interpreter itself spells out, like "clock".
+ *
+ * Identifiers are ASCII, so hashing bytes gives the same hash as String.hashCode.
+ */
+final class NameTable {
+
+    private String[] table = new String[256];
+    private int count = 0;
+
+    String intern(String source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.charAt(start + i);
+        }
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String name = table[i];
+            if (name == null) {
+                return insert(i, source.substring(start, start + length).intern());
+            }
+            if (name.hashCode() == hash && name.length() == length && source.regionMatches(start, name, 0, length)) {
+                return name;
+            }
+        }
+    }
+
+    String intern(ByteBuffer source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.get(start + i);
+        }
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String name = table[i];
+            if (name == null) {
+                byte[] ascii = new byte[length];
+                source.get(start, ascii);
+                return insert(i, new String(ascii, StandardCharsets.US_ASCII).intern());
+            }
+            if (name.hashCode() == hash && name.length() == length && matches(name, source, start)) {
+                return name;
+            }
+        }
+    }
+
+    private static boolean matches(String name, ByteBuffer source, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String insert(int index, String name) {
+        table[index] = name;
+        if (++count * 2 > table.length) {
+            rehash();
+        }
+        return name;
+    }
+
+    private void rehash() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String name : old) {
+            if (name == null) continue;
+            int i = name.hashCode() & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = name;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.gill.jlox.tokens;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Lexer's output, stored as parallel primitive arrays (struct-of-arrays) instead
+ * of one Token object per token: for token i we keep its type, where it starts in the
+ * source, how long it is and which line it is on. Scanning a file therefore allocates
+ * a handful of arrays, not a handful of objects per token.
+ *
+ * Everything else is derived from the source on demand: lexeme(i) cuts the substring
+ * (or, for an identifier, looks it up in a NameTable, so all occurrences of a name share
+ * one String), literal(i) parses the number or strips the string quotes, and token(i)
+ * builds (and remembers) a real Token for the parts of the parser that keep one in the AST.
+ *
+ * The source is either a String (Lexer) or the UTF-8 bytes of a script file (ByteLexer),
+ * in which case offsets and lengths count bytes and lexemes are decoded when asked for.
+ *
+ * Token indices are absolute. A streaming parser can discardBefore() the tokens it is
+ * done with; the buffer then only holds the window from the first kept token on.
+ */
+public final class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final byte IDENTIFIER = (byte) TokenType.IDENTIFIER.ordinal();
+
+    private final String source;
+    private final ByteBuffer bytes;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    // Absolute index of the first token still held (array slot 0), and one past the last one.
+    private int offset = 0;
+    private int size = 0;
+    // Tokens handed out by token(i), so every caller sees the same object for the same index.
+    private Token[] materialized;
+    private NameTable names;
+
+    public TokenBuffer(String source) {
+        // Real Lox code averages a little over three characters per token.
+        this(source, Math.max(16, source.length() / 3));
+    }
+
+    public TokenBuffer(ByteBuffer bytes) {
+        this(null, bytes, Math.max(16, bytes.limit() / 3));
+    }
+
+    public TokenBuffer(String source, int capacity) {
+        this(source, null, capacity);
+    }
+
+    public TokenBuffer(ByteBuffer bytes, int capacity) {
+        this(null, bytes, capacity);
+    }
+
+    private TokenBuffer(String source, ByteBuffer bytes, int capacity) {
+        this.source = source;
+        this.bytes = bytes;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+    }
+
+    /**
+     * Wraps already built Tokens (eg. hand-made token streams) so the Parser can read them.
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        TokenBuffer buffer = new TokenBuffer("", Math.max(16, tokens.size()));
+        buffer.materialized = new Token[buffer.types.length];
+        for (Token token : tokens) {
+            buffer.materialized[buffer.size] = token;
+            buffer.add(token.tokenType, 0, 0, token.line);
+        }
+        return buffer;
+    }
+
+    public void add(TokenType type, int start, int length, int line) {
+        int slot = size - offset;
+        if (slot == types.length) {
+            grow();
+        }
+        types[slot] = (byte) type.ordinal();
+        starts[slot] = start;
+        lengths[slot] = length;
+        lines[slot] = line;
+        size++;
+    }
+
+    /**
+     * Appends every token of other, which must have been scanned from the same source.
+     */
+    public void addAll(TokenBuffer other) {
+        int count = other.size - other.offset;
+        int slot = size - offset;
+        if (slot + count > types.length) {
+            int capacity = slot + count;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            if (materialized != null) {
+                materialized = Arrays.copyOf(materialized, capacity);
+            }
+        }
+        System.arraycopy(other.types, 0, types, slot, count);
+        System.arraycopy(other.starts, 0, starts, slot, count);
+        System.arraycopy(other.lengths, 0, lengths, slot, count);
+        System.arraycopy(other.lines, 0, lines, slot, count);
+        size += count;
+    }
+
+    /**
+     * Drops every token before index. Indices of the remaining tokens don't change.
+     */
+    public void discardBefore(int index) {
+        int dropped = index - offset;
+        if (dropped <= 0) {
+            return;
+        }
+        int kept = size - index;
+        System.arraycopy(types, dropped, types, 0, kept);
+        System.arraycopy(starts, dropped, starts, 0, kept);
+        System.arraycopy(lengths, dropped, lengths, 0, kept);
+        System.arraycopy(lines, dropped, lines, 0, kept);
+        if (materialized != null) {
+            System.arraycopy(materialized, dropped, materialized, 0, kept);
+            Arrays.fill(materialized, kept, kept + dropped, null);
+        }
+        offset = index;
+    }
+
+    private void grow() {
+        int capacity = types.length + (types.length >> 1) + 1;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        if (materialized != null) {
+            materialized = Arrays.copyOf(materialized, capacity);
+        }
+    }
+
+    /**
+     * One past the index of the last token scanned so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int i) {
+        return TYPES[types[i - offset]];
+    }
+
+    public int line(int i) {
+        return lines[i - offset];
+    }
+
+    public String lexeme(int i) {
+        int slot = i - offset;
+        if (materialized != null && materialized[slot] != null) {
+            return materialized[slot].lexeme;
+        }
+        if (types[slot] == IDENTIFIER) {
+            return name(starts[slot], lengths[slot]);
+        }
+        return text(starts[slot], lengths[slot]);
+    }
+
+    private String name(int start, int length) {
+        if (names == null) {
+            names = new NameTable();
+        }
+        return source != null ? names.intern(source, start, length) : names.intern(bytes, start, length);
+    }
+
+    private String text(int start, int length) {
+        if (source != null) {
+            return source.substring(start, start + length);
+        }
+        byte[] utf8 = new byte[length];
+        bytes.get(start, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    public Object literal(int i) {
+        int slot = i - offset;
+        if (materialized != null && materialized[slot] != null) {
+            return materialized[slot].literal;
+        }
+        switch (type(i)) {
+            case NUMBER:
+                return Double.parseDouble(lexeme(i));
+            case STRING:
+                // Drop the surrounding quotes.
+                return text(starts[slot] + 1, lengths[slot] - 2);
+            default:
+                return null;
+        }
+    }
+
+    public Token token(int i) {
+        if (materialized == null) {
+            materialized = new Token[types.length];
+        }
+        Token token = materialized[i - offset];
+        if (token == null) {
+            token = new Token(lexeme(i), type(i), literal(i), line(i));
+            materialized[i - offset] = token;
+        }
+        return token;
+    }
+
+    public List<Token> toTokens() {
+        Token[] tokens = new Token[size - offset];
+        for (int i = offset; i < size; i++) {
+            tokens[i - offset] = token(i);
+        }
+        return Arrays.asList(tokens);
+    }
+}
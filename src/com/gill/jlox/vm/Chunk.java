@@ -0,0 +1,164 @@
+package com.gill.jlox.vm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled sequence of instructions plus the constant pool they index into.
+ */
+public class Chunk {
+    byte[] code = new byte[64];
+    int size = 0;
+    Object[] constants;
+    private final List<Object> constantPool = new ArrayList<>();
+    // Literals are shared by value; Tokens and prototypes don't override equals, so they're shared by identity.
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    void write(byte b) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = b;
+    }
+
+    void writeShort(int value) {
+        write((byte) ((value >> 8) & 0xff));
+        write((byte) (value & 0xff));
+    }
+
+    void patchShort(int offset, int value) {
+        code[offset] = (byte) ((value >> 8) & 0xff);
+        code[offset + 1] = (byte) (value & 0xff);
+    }
+
+    int addConstant(Object value) {
+        Integer existing = constantIndex.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (constantPool.size() == 0xffff) {
+            throw new IllegalStateException("Too many constants in one chunk");
+        }
+        constantPool.add(value);
+        constantIndex.put(value, constantPool.size() - 1);
+        return constantPool.size() - 1;
+    }
+
+    /**
+     * Trims the code array and freezes the constant pool for the VM.
+     */
+    void seal() {
+        code = Arrays.copyOf(code, size);
+        constants = constantPool.toArray();
+    }
+
+    /**
+     * The most values the code ever has on the operand stack, on top of what its frame
+     * starts with (the callee and its arguments or locals). Follows both ways out of every jump;
+     * the depth at an instruction is the same whichever way it is reached, so each one
+     * is looked at once.
+     */
+    int maxStackDepth() {
+        int[] depthAt = new int[size];
+        Arrays.fill(depthAt, -1);
+        Deque<Integer> pending = new ArrayDeque<>();
+        depthAt[0] = 0;
+        pending.push(0);
+        int max = 0;
+        while (!pending.isEmpty()) {
+            int ip = pending.pop();
+            byte op = code[ip];
+            int depth = depthAt[ip] + stackEffect(op, ip);
+            max = Math.max(max, depth);
+            int next = ip + length(op);
+            switch (op) {
+                case OpCode.RETURN -> {
+                }
+                case OpCode.JUMP -> reach(depthAt, pending, next + readShort(ip + 1), depth);
+                case OpCode.JUMP_IF_FALSE, OpCode.JUMP_IF_TRUE -> {
+                    reach(depthAt, pending, next + readShort(ip + 1), depth);
+                    reach(depthAt, pending, next, depth);
+                }
+                case OpCode.POP_JUMP_IF_FALSE, OpCode.JUMP_IF_NOT_LESS,
+                        OpCode.JUMP_IF_NOT_LESS_EQUAL, OpCode.JUMP_IF_NOT_GREATER, OpCode.JUMP_IF_NOT_GREATER_EQUAL,
+                        OpCode.JUMP_IF_NOT_LESS_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_CONSTANT,
+                        OpCode.JUMP_IF_NOT_GREATER_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_CONSTANT,
+                        OpCode.JUMP_IF_NOT_LESS_STACK_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_STACK_CONSTANT,
+                        OpCode.JUMP_IF_NOT_GREATER_STACK_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_STACK_CONSTANT,
+                        OpCode.JUMP_IF_NOT_LESS_GLOBAL_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_GLOBAL_CONSTANT,
+                        OpCode.JUMP_IF_NOT_GREATER_GLOBAL_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_GLOBAL_CONSTANT -> {
+                    // The offset is the instruction's last operand, and signed.
+                    reach(depthAt, pending, next + (short) readShort(next - 2), depth);
+                    reach(depthAt, pending, next, depth);
+                }
+                default -> reach(depthAt, pending, next, depth);
+            }
+        }
+        return max;
+    }
+
+    private static void reach(int[] depthAt, Deque<Integer> pending, int ip, int depth) {
+        if (depthAt[ip] < 0) {
+            depthAt[ip] = depth;
+            pending.push(ip);
+        }
+    }
+
+    private int readShort(int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    private int stackEffect(byte op, int ip) {
+        return switch (op) {
+            case OpCode.CONSTANT, OpCode.NIL, OpCode.TRUE, OpCode.FALSE, OpCode.GET_LOCAL,
+                    OpCode.GET_STACK, OpCode.GET_GLOBAL, OpCode.GET_DYNAMIC, OpCode.CLOSURE,
+                    OpCode.ADD_STACK_CONSTANT, OpCode.SUBTRACT_STACK_CONSTANT, OpCode.ADD_GLOBAL_CONSTANT,
+                    OpCode.SUBTRACT_GLOBAL_CONSTANT -> 1;
+            case OpCode.POP, OpCode.DEFINE_LOCAL, OpCode.DEFINE_STACK, OpCode.DEFINE_NAME, OpCode.BINARY,
+                    OpCode.RETURN, OpCode.PRINT, OpCode.ADD, OpCode.SUBTRACT, OpCode.MULTIPLY, OpCode.DIVIDE,
+                    OpCode.MODULO, OpCode.GREATER, OpCode.GREATER_EQUAL, OpCode.LESS,
+                    OpCode.LESS_EQUAL, OpCode.EQUAL, OpCode.NOT_EQUAL, OpCode.STORE_LOCAL, OpCode.STORE_GLOBAL,
+                    OpCode.POP_JUMP_IF_FALSE, OpCode.JUMP_IF_NOT_LESS_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_CONSTANT,
+                    OpCode.JUMP_IF_NOT_GREATER_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_CONSTANT -> -1;
+            case OpCode.JUMP_IF_NOT_LESS, OpCode.JUMP_IF_NOT_LESS_EQUAL, OpCode.JUMP_IF_NOT_GREATER,
+                    OpCode.JUMP_IF_NOT_GREATER_EQUAL -> -2;
+            // The arguments go; the callee's slot gets the result.
+            case OpCode.CALL -> -(code[ip + 1] & 0xff);
+            default -> 0;
+        };
+    }
+
+    // Opcode plus operands, see OpCode.
+    private static int length(byte op) {
+        return switch (op) {
+            case OpCode.NIL, OpCode.TRUE, OpCode.FALSE, OpCode.POP, OpCode.INCREMENT, OpCode.DECREMENT,
+                    OpCode.POP_ENV, OpCode.RETURN, OpCode.PRINT, OpCode.ADD, OpCode.SUBTRACT,
+                    OpCode.MULTIPLY, OpCode.DIVIDE, OpCode.MODULO, OpCode.GREATER, OpCode.GREATER_EQUAL,
+                    OpCode.LESS, OpCode.LESS_EQUAL, OpCode.EQUAL, OpCode.NOT_EQUAL, OpCode.NEGATE,
+                    OpCode.NOT -> 1;
+            case OpCode.CALL -> 2;
+            case OpCode.GET_LOCAL, OpCode.SET_LOCAL, OpCode.STORE_LOCAL -> 4;
+            case OpCode.DEFINE_LOCAL, OpCode.JUMP_IF_NOT_LESS_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_CONSTANT,
+                    OpCode.JUMP_IF_NOT_GREATER_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_CONSTANT,
+                    OpCode.ADD_STACK_CONSTANT, OpCode.SUBTRACT_STACK_CONSTANT, OpCode.ADD_GLOBAL_CONSTANT,
+                    OpCode.SUBTRACT_GLOBAL_CONSTANT, OpCode.ADD_TO_STACK, OpCode.ADD_TO_GLOBAL -> 5;
+            case OpCode.JUMP_IF_NOT_LESS_STACK_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_STACK_CONSTANT,
+                    OpCode.JUMP_IF_NOT_GREATER_STACK_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_STACK_CONSTANT,
+                    OpCode.JUMP_IF_NOT_LESS_GLOBAL_CONSTANT, OpCode.JUMP_IF_NOT_LESS_EQUAL_GLOBAL_CONSTANT,
+                    OpCode.JUMP_IF_NOT_GREATER_GLOBAL_CONSTANT, OpCode.JUMP_IF_NOT_GREATER_EQUAL_GLOBAL_CONSTANT -> 7;
+            case OpCode.CONSTANT, OpCode.GET_GLOBAL, OpCode.SET_GLOBAL, OpCode.DEFINE_NAME,
+                    OpCode.GET_DYNAMIC, OpCode.SET_DYNAMIC, OpCode.BINARY, OpCode.UNARY, OpCode.JUMP,
+                    OpCode.JUMP_IF_FALSE, OpCode.JUMP_IF_TRUE, OpCode.PUSH_ENV,
+                    OpCode.CLOSURE, OpCode.GET_STACK, OpCode.SET_STACK, OpCode.DEFINE_STACK,
+                    OpCode.STORE_GLOBAL, OpCode.POP_JUMP_IF_FALSE, OpCode.JUMP_IF_NOT_LESS,
+                    OpCode.JUMP_IF_NOT_LESS_EQUAL, OpCode.JUMP_IF_NOT_GREATER, OpCode.JUMP_IF_NOT_GREATER_EQUAL,
+                    OpCode.ADD_CONSTANT, OpCode.SUBTRACT_CONSTANT, OpCode.MULTIPLY_CONSTANT -> 3;
+            default -> throw new IllegalStateException("Unknown opcode " + op);
+        };
+    }
+}
@@ -0,0 +1,632 @@
+package com.gill.jlox.vm;
+
+import com.gill.jlox.ast.expressions.*;
+import com.gill.jlox.ast.statements.*;
+import com.gill.jlox.operations.Resolver;
+import com.gill.jlox.runtime.GlobalRef;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+import com.gill.jlox.tokens.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Single pass over a resolved SyntaxTree which emits bytecode for the VM.
+ * Every top-level statement becomes its own little "script" function, so a runtime
+ * error in one of them can be reported and execution resumes with the next one,
+ * exactly like Evaluator.evaluate(List) does.
+ */
+public class Compiler implements BaseVisitor, BaseStmtVisitor {
+
+    private static class Loop {
+        final int envDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(int envDepth) {
+            this.envDepth = envDepth;
+        }
+    }
+
+    private VmFunction current;
+    // Number of PUSH_ENVs active in the function being compiled, so `break` knows how many to undo.
+    private int envDepth = 0;
+    private Deque<Loop> loops = new ArrayDeque<>();
+    // With current.stackLocals: the first local of each scope the Resolver counted in the
+    // function so far, innermost last, and the next free local. Empty otherwise.
+    private List<Integer> localScopes = new ArrayList<>();
+    private int nextLocal = 0;
+
+    public List<VmFunction> compile(List<BaseStmt> statements) throws RuntimeError {
+        List<VmFunction> scripts = new ArrayList<>();
+        for (BaseStmt statement : statements) {
+            current = new VmFunction("script", new String[0], 0);
+            if (statement instanceof ExprStmt exprStmt) {
+                // Top-level expression statements hand their value back (the REPL prints it).
+                compile(exprStmt.expression);
+            } else {
+                compile(statement);
+                emit(OpCode.NIL);
+            }
+            emit(OpCode.RETURN);
+            seal(current);
+            scripts.add(current);
+        }
+        return scripts;
+    }
+
+    private void compile(BaseStmt stmt) throws RuntimeError {
+        stmt.accept(this);
+    }
+
+    private void compile(BaseExpr expr) throws RuntimeError {
+        expr.accept(this);
+    }
+
+    private VmFunction compileFunction(FunStmt funStmt, String name) throws RuntimeError {
+        String[] parameters = new String[funStmt.parameters.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = ((Token) funStmt.parameters.get(i)).lexeme;
+        }
+        if (!funStmt.isParsed()) {
+            // --lazy-parse: leave the body alone until the function is called, so a syntax
+            // error in it only matters to a program that calls it - as with the Evaluator.
+            return new VmFunction(name, parameters, funStmt);
+        }
+        VmFunction function = new VmFunction(name, parameters, funStmt.slotCount);
+        compileBody(function, funStmt, funStmt.body());
+        return function;
+    }
+
+    /**
+     * Parses, resolves and compiles the body of a function whose declaration was compiled
+     * while the body was still deferred. A syntax error in it is thrown as a RuntimeError,
+     * and the function stays deferred.
+     */
+    static void compileDeferred(VmFunction function) throws RuntimeError {
+        FunStmt funStmt = function.deferred;
+        List<BaseStmt> body = funStmt.body();
+        function.slotCount = funStmt.slotCount;
+        function.deferred = null;
+        new Compiler().compileBody(function, funStmt, body);
+    }
+
+    private void compileBody(VmFunction function, FunStmt funStmt, List<BaseStmt> body) throws RuntimeError {
+        if (function.slotCount < 0) {
+            throw new RuntimeError("VM: function '" + function.name + "' was not resolved");
+        }
+        VmFunction enclosing = current;
+        int enclosingEnvDepth = envDepth;
+        Deque<Loop> enclosingLoops = loops;
+        List<Integer> enclosingLocalScopes = localScopes;
+        int enclosingNextLocal = nextLocal;
+
+        current = function;
+        envDepth = 0;
+        loops = new ArrayDeque<>();
+        localScopes = new ArrayList<>();
+        nextLocal = 0;
+        if (!funStmt.localsEscape) {
+            // Nothing can see the locals but this code: they go on the stack, not in an Environment.
+            function.stackLocals = true;
+            localScopes.add(0);
+            nextLocal = function.slotCount;
+            function.localCount = nextLocal;
+        }
+        for (BaseStmt stmt : body) {
+            compile(stmt);
+        }
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+        seal(current);
+
+        current = enclosing;
+        envDepth = enclosingEnvDepth;
+        loops = enclosingLoops;
+        localScopes = enclosingLocalScopes;
+        nextLocal = enclosingNextLocal;
+    }
+
+    private static void seal(VmFunction function) {
+        function.chunk.seal();
+        function.frameSize = Math.max(function.arity(), function.localCount) + function.chunk.maxStackDepth();
+    }
+
+    // Emitting helpers
+
+    private void emit(byte op) {
+        current.chunk.write(op);
+    }
+
+    private void emitWithShort(byte op, int operand) {
+        current.chunk.write(op);
+        current.chunk.writeShort(operand);
+    }
+
+    private int constant(Object value) {
+        return current.chunk.addConstant(value);
+    }
+
+    private int emitJump(byte op) {
+        emitWithShort(op, 0xffff);
+        return current.chunk.size - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = current.chunk.size - offset - 2;
+        // Conditional jumps read their offset signed, see emitConditionalJump.
+        if (jump > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too much code to jump over");
+        }
+        current.chunk.patchShort(offset, jump);
+    }
+
+    // Points a conditional jump back at loopStart.
+    private void patchLoop(int offset, int loopStart) {
+        int jump = loopStart - offset - 2;
+        if (jump < Short.MIN_VALUE) {
+            throw new IllegalStateException("Loop body too large");
+        }
+        current.chunk.patchShort(offset, jump);
+    }
+
+    private void emitGet(Token name, int depth, int slot) {
+        if (depth >= 0 && depth < localScopes.size()) {
+            emitWithShort(OpCode.GET_STACK, stackLocal(depth, slot));
+        } else if (depth >= 0) {
+            emitLocal(OpCode.GET_LOCAL, depth - localScopes.size(), slot);
+        } else if (depth == Resolver.GLOBAL) {
+            emitWithShort(OpCode.GET_GLOBAL, constant(new GlobalRef(name)));
+        } else {
+            emitWithShort(OpCode.GET_DYNAMIC, constant(name));
+        }
+    }
+
+    private void emitSet(Token name, int depth, int slot) {
+        if (depth >= 0 && depth < localScopes.size()) {
+            emitWithShort(OpCode.SET_STACK, stackLocal(depth, slot));
+        } else if (depth >= 0) {
+            emitLocal(OpCode.SET_LOCAL, depth - localScopes.size(), slot);
+        } else if (depth == Resolver.GLOBAL) {
+            emitWithShort(OpCode.SET_GLOBAL, constant(new GlobalRef(name)));
+        } else {
+            emitWithShort(OpCode.SET_DYNAMIC, constant(name));
+        }
+    }
+
+    private void emitLocal(byte op, int depth, int slot) {
+        if (depth > 0xff) {
+            throw new IllegalStateException("Scopes nested too deeply");
+        }
+        emit(op);
+        emit((byte) depth);
+        current.chunk.writeShort(slot);
+    }
+
+    /**
+     * The stack local for a (depth, slot) the Resolver gave, when depth is a scope of the
+     * function being compiled. Scopes further out are reached through the closure's
+     * environment, depth minus the scopes on the stack up the chain.
+     */
+    private int stackLocal(int depth, int slot) {
+        int local = localScopes.get(localScopes.size() - 1 - depth) + slot;
+        if (local > 0xffff) {
+            throw new IllegalStateException("Too many local variables in one function");
+        }
+        return local;
+    }
+
+    /**
+     * The stack local expr reads, if it is a variable of the function being compiled that
+     * lives on the stack; otherwise -1.
+     */
+    private int stackLocalOf(BaseExpr expr) {
+        if (expr instanceof VarExpr varExpr && varExpr.depth >= 0 && varExpr.depth < localScopes.size()) {
+            return stackLocal(varExpr.depth, varExpr.slot);
+        }
+        return -1;
+    }
+
+    private void emitDefine(Token name, int slot) {
+        if (slot >= 0 && !localScopes.isEmpty()) {
+            emitWithShort(OpCode.DEFINE_STACK, stackLocal(0, slot));
+        } else if (slot >= 0) {
+            emitWithShort(OpCode.DEFINE_LOCAL, slot);
+            current.chunk.writeShort(constant(name.lexeme));
+        } else {
+            emitWithShort(OpCode.DEFINE_NAME, constant(name));
+        }
+    }
+
+    // Expressions
+
+    @Override
+    public Object visitGrouping(Grouping tGrouping) throws RuntimeError {
+        compile(tGrouping.expr);
+        return null;
+    }
+
+    @Override
+    public Object visitUnary(Unary tUnary) throws RuntimeError {
+        compile(tUnary.right);
+        switch (tUnary.operator.tokenType) {
+            case MINUS -> emit(OpCode.NEGATE);
+            case BANG -> emit(OpCode.NOT);
+            default -> emitWithShort(OpCode.UNARY, constant(tUnary.operator));
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitLiteral(Literal tLiteral) {
+        Object value = tLiteral.value;
+        if (value == null) {
+            emit(OpCode.NIL);
+        } else if (value instanceof Boolean bool) {
+            emit(bool ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            emitWithShort(OpCode.CONSTANT, constant(value));
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitBinary(Binary tBinary) throws RuntimeError {
+        TokenType operator = tBinary.operator.tokenType;
+        if (tBinary.right instanceof Literal literal && literal.value instanceof Double) {
+            // `n - 1`, `i * 2`: the constant comes straight from the pool, without a push,
+            // and a stack local or global on the left of `+` or `-` straight from its slot.
+            if (operator == TokenType.PLUS || operator == TokenType.MINUS) {
+                boolean plus = operator == TokenType.PLUS;
+                int local = stackLocalOf(tBinary.left);
+                if (local >= 0) {
+                    emitWithShort(plus ? OpCode.ADD_STACK_CONSTANT : OpCode.SUBTRACT_STACK_CONSTANT, local);
+                    current.chunk.writeShort(constant(literal.value));
+                    return null;
+                }
+                if (tBinary.left instanceof VarExpr varExpr && varExpr.depth == Resolver.GLOBAL) {
+                    emitWithShort(plus ? OpCode.ADD_GLOBAL_CONSTANT : OpCode.SUBTRACT_GLOBAL_CONSTANT,
+                            constant(new GlobalRef(varExpr.name)));
+                    current.chunk.writeShort(constant(literal.value));
+                    return null;
+                }
+            }
+            byte op = switch (operator) {
+                case PLUS -> OpCode.ADD_CONSTANT;
+                case MINUS -> OpCode.SUBTRACT_CONSTANT;
+                case STAR -> OpCode.MULTIPLY_CONSTANT;
+                default -> OpCode.CONSTANT;
+            };
+            if (op != OpCode.CONSTANT) {
+                compile(tBinary.left);
+                emitWithShort(op, constant(literal.value));
+                return null;
+            }
+        }
+        compile(tBinary.left);
+        compile(tBinary.right);
+        switch (operator) {
+            case PLUS -> emit(OpCode.ADD);
+            case MINUS -> emit(OpCode.SUBTRACT);
+            case STAR -> emit(OpCode.MULTIPLY);
+            case SLASH -> emit(OpCode.DIVIDE);
+            case PERCENT -> emit(OpCode.MODULO);
+            case GREATER -> emit(OpCode.GREATER);
+            case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL);
+            case LESS -> emit(OpCode.LESS);
+            case LESS_EQUAL -> emit(OpCode.LESS_EQUAL);
+            case EQUAL_EQUAL -> emit(OpCode.EQUAL);
+            case BANG_EQUAL -> emit(OpCode.NOT_EQUAL);
+            default -> emitWithShort(OpCode.BINARY, constant(tBinary.operator));
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitVarExpr(VarExpr varExpr) {
+        emitGet(varExpr.name, varExpr.depth, varExpr.slot);
+        return null;
+    }
+
+    @Override
+    public Object visitAssignExpr(AssignExpr assignExpr) throws RuntimeError {
+        compile(assignExpr.value);
+        emitSet(assignExpr.name, assignExpr.depth, assignExpr.slot);
+        return null;
+    }
+
+    @Override
+    public Object visitLogicalExpr(LogicalExpr logicalExpr) throws RuntimeError {
+        compile(logicalExpr.lhs);
+        // Short-circuit: leave the lhs as the result if it decides the outcome.
+        boolean isOr = logicalExpr.operator.tokenType == TokenType.OR;
+        int endJump = emitJump(isOr ? OpCode.JUMP_IF_TRUE : OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(logicalExpr.rhs);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Object visitIncrement(Increment increment) throws RuntimeError {
+        compile(increment.expr);
+        emit(OpCode.INCREMENT);
+        emitSet(increment.operandToken, increment.depth, increment.slot);
+        return null;
+    }
+
+    @Override
+    public Object visitDecrement(Decrement decrement) throws RuntimeError {
+        compile(decrement.expr);
+        emit(OpCode.DECREMENT);
+        emitSet(decrement.token, decrement.depth, decrement.slot);
+        return null;
+    }
+
+    @Override
+    public Object visitCallExpr(FunCall funCall) throws RuntimeError {
+        compile(funCall.callee);
+        for (Object arg : funCall.args) {
+            compile((BaseExpr) arg);
+        }
+        emit(OpCode.CALL);
+        emit((byte) funCall.args.size());
+        return null;
+    }
+
+    @Override
+    public Object visitLambdaExpr(LambdaExpr lambdaExpr) throws RuntimeError {
+        VmFunction lambda = compileFunction(lambdaExpr.loxLambda, "anonFn");
+        emitWithShort(OpCode.CLOSURE, constant(lambda));
+        return null;
+    }
+
+    // Statements
+
+    @Override
+    public Object visitExpressionStmt(ExprStmt exprStmt) throws RuntimeError {
+        if (exprStmt.expression instanceof AssignExpr assignExpr) {
+            if (emitAddTo(assignExpr)) {
+                return null;
+            }
+            // The assigned value isn't used: store it and drop it in one go where there is an op for that.
+            int depth = assignExpr.depth;
+            if (depth >= 0 && depth < localScopes.size()) {
+                compile(assignExpr.value);
+                emitWithShort(OpCode.DEFINE_STACK, stackLocal(depth, assignExpr.slot));
+                return null;
+            } else if (depth >= 0) {
+                compile(assignExpr.value);
+                emitLocal(OpCode.STORE_LOCAL, depth - localScopes.size(), assignExpr.slot);
+                return null;
+            } else if (depth == Resolver.GLOBAL) {
+                compile(assignExpr.value);
+                emitWithShort(OpCode.STORE_GLOBAL, constant(new GlobalRef(assignExpr.name)));
+                return null;
+            }
+        }
+        compile(exprStmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    /**
+     * `i = i + 1`, a number literal added to the variable assigned, as on the last line of
+     * most loops: a single ADD_TO_STACK or ADD_TO_GLOBAL if the variable is a stack local or
+     * a global. Returns whether it compiled the assignment.
+     */
+    private boolean emitAddTo(AssignExpr assignExpr) {
+        if (!(assignExpr.value instanceof Binary binary && binary.operator.tokenType == TokenType.PLUS
+                && binary.left instanceof VarExpr varExpr && binary.right instanceof Literal literal
+                && literal.value instanceof Double)) {
+            return false;
+        }
+        int depth = assignExpr.depth;
+        if (depth >= 0 && depth < localScopes.size() && stackLocalOf(varExpr) == stackLocal(depth, assignExpr.slot)) {
+            emitWithShort(OpCode.ADD_TO_STACK, stackLocal(depth, assignExpr.slot));
+        } else if (depth == Resolver.GLOBAL && varExpr.depth == Resolver.GLOBAL
+                && varExpr.name.lexeme.equals(assignExpr.name.lexeme)) {
+            emitWithShort(OpCode.ADD_TO_GLOBAL, constant(new GlobalRef(varExpr.name)));
+        } else {
+            return false;
+        }
+        current.chunk.writeShort(constant(literal.value));
+        return true;
+    }
+
+    @Override
+    public Object visitPrintStmt(PrintStmt printStmt) throws RuntimeError {
+        compile(printStmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Object visitVarStmt(VarStmt varStmt) throws RuntimeError {
+        if (varStmt.initializer != null) {
+            compile(varStmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+        }
+        if (varStmt.hoisted && localScopes.isEmpty()) {
+            // The slot is in an enclosing scope's environment, which doesn't get the name.
+            emitWithShort(OpCode.DEFINE_LOCAL, varStmt.slot);
+            current.chunk.writeShort(constant(null));
+        } else {
+            emitDefine(varStmt.name, varStmt.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitBlockStmt(BlockStmt blockStmt) throws RuntimeError {
+        if (blockStmt.slotCount < 0) {
+            throw new RuntimeError("VM: block was not resolved");
+        }
+        if (blockStmt.slotCount == 0) {
+            // Runs in the enclosing environment: no PUSH_ENV, so `break` has nothing to undo either.
+            for (Object stmt : blockStmt.statements) {
+                compile((BaseStmt) stmt);
+            }
+            return null;
+        }
+        if (current.stackLocals) {
+            // The block's variables take the next locals, which a sibling block can re-use later.
+            localScopes.add(nextLocal);
+            nextLocal += blockStmt.slotCount;
+            current.localCount = Math.max(current.localCount, nextLocal);
+            for (Object stmt : blockStmt.statements) {
+                compile((BaseStmt) stmt);
+            }
+            nextLocal -= blockStmt.slotCount;
+            localScopes.remove(localScopes.size() - 1);
+            return null;
+        }
+        emitWithShort(OpCode.PUSH_ENV, blockStmt.slotCount);
+        envDepth++;
+        for (Object stmt : blockStmt.statements) {
+            compile((BaseStmt) stmt);
+        }
+        envDepth--;
+        emit(OpCode.POP_ENV);
+        return null;
+    }
+
+    @Override
+    public Object visitIfStmt(IfStmt ifStmt) throws RuntimeError {
+        int elseJump = emitConditionalJump(ifStmt.condition);
+        compile(ifStmt.thenBranch);
+        if (ifStmt.elseBranch == null) {
+            patchJump(elseJump);
+            return null;
+        }
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        compile(ifStmt.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Object visitWhileStmt(WhileStmt whileStmt) throws RuntimeError {
+        compileLoop(whileStmt.condition, whileStmt.body);
+        return null;
+    }
+
+    @Override
+    public Object visitForStmt(ForStmt forStmt) throws RuntimeError {
+        compileLoop(forStmt.condition, forStmt.body);
+        return null;
+    }
+
+    /**
+     * The condition is tested once before the body and then after every pass through it,
+     * so that an iteration ends in one conditional jump back into the body instead of an
+     * unconditional one up to the test.
+     */
+    private void compileLoop(BaseExpr condition, BaseStmt body) throws RuntimeError {
+        int exitJump = emitConditionalJump(condition);
+        int bodyStart = current.chunk.size;
+        Loop loop = new Loop(envDepth);
+        loops.push(loop);
+        compile(body);
+        loops.pop();
+        patchLoop(emitConditionalJump(condition), bodyStart);
+        patchJump(exitJump);
+        for (int breakJump : loop.breakJumps) {
+            patchJump(breakJump);
+        }
+    }
+
+    /**
+     * Compiles a condition and a jump, still to be patched: forward (patchJump) it is taken
+     * when the condition is false, backward (patchLoop) when it holds. Either way the
+     * condition is off the stack. A comparison jumps on its operands directly, without making
+     * a Boolean of them first, and takes a number literal on the right (`n < 2`) from the
+     * constant pool and a stack local or global on the left from its slot.
+     */
+    private int emitConditionalJump(BaseExpr condition) throws RuntimeError {
+        if (!(condition instanceof Binary binary) || !isComparison(binary.operator.tokenType)) {
+            compile(condition);
+            return emitJump(OpCode.POP_JUMP_IF_FALSE);
+        }
+        TokenType operator = binary.operator.tokenType;
+        if (!(binary.right instanceof Literal literal && literal.value instanceof Double)) {
+            compile(binary.left);
+            compile(binary.right);
+            return emitJump(switch (operator) {
+                case LESS -> OpCode.JUMP_IF_NOT_LESS;
+                case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL;
+                case GREATER -> OpCode.JUMP_IF_NOT_GREATER;
+                default -> OpCode.JUMP_IF_NOT_GREATER_EQUAL;
+            });
+        }
+        int local = stackLocalOf(binary.left);
+        if (local >= 0) {
+            emitWithShort(switch (operator) {
+                case LESS -> OpCode.JUMP_IF_NOT_LESS_STACK_CONSTANT;
+                case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL_STACK_CONSTANT;
+                case GREATER -> OpCode.JUMP_IF_NOT_GREATER_STACK_CONSTANT;
+                default -> OpCode.JUMP_IF_NOT_GREATER_EQUAL_STACK_CONSTANT;
+            }, local);
+        } else if (binary.left instanceof VarExpr varExpr && varExpr.depth == Resolver.GLOBAL) {
+            emitWithShort(switch (operator) {
+                case LESS -> OpCode.JUMP_IF_NOT_LESS_GLOBAL_CONSTANT;
+                case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL_GLOBAL_CONSTANT;
+                case GREATER -> OpCode.JUMP_IF_NOT_GREATER_GLOBAL_CONSTANT;
+                default -> OpCode.JUMP_IF_NOT_GREATER_EQUAL_GLOBAL_CONSTANT;
+            }, constant(new GlobalRef(varExpr.name)));
+        } else {
+            compile(binary.left);
+            emit(switch (operator) {
+                case LESS -> OpCode.JUMP_IF_NOT_LESS_CONSTANT;
+                case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL_CONSTANT;
+                case GREATER -> OpCode.JUMP_IF_NOT_GREATER_CONSTANT;
+                default -> OpCode.JUMP_IF_NOT_GREATER_EQUAL_CONSTANT;
+            });
+        }
+        current.chunk.writeShort(constant(literal.value));
+        current.chunk.writeShort(0xffff);
+        return current.chunk.size - 2;
+    }
+
+    private static boolean isComparison(TokenType operator) {
+        return operator == TokenType.LESS || operator == TokenType.LESS_EQUAL
+                || operator == TokenType.GREATER || operator == TokenType.GREATER_EQUAL;
+    }
+
+    @Override
+    public Object visitBreakStmt(BreakStmt breakStmt) throws RuntimeError {
+        Loop loop = loops.peek();
+        if (loop == null) {
+            throw new RuntimeError("Break cannot occur outside for loop");
+        }
+        for (int i = envDepth; i > loop.envDepth; i--) {
+            emit(OpCode.POP_ENV);
+        }
+        loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Object visitFunStmt(FunStmt funStmt) throws RuntimeError {
+        VmFunction function = compileFunction(funStmt, funStmt.funIdentifier.lexeme);
+        emitWithShort(OpCode.CLOSURE, constant(function));
+        emitDefine(funStmt.funIdentifier, funStmt.slot);
+        return null;
+    }
+
+    @Override
+    public Object visitReturnStmt(ReturnStmt returnStmt) throws RuntimeError {
+        if (returnStmt.returnValue != null) {
+            compile(returnStmt.returnValue);
+        } else {
+            emit(OpCode.NIL);
+        }
+        // RETURN restores the caller's environment, so no POP_ENVs are needed here.
+        emit(OpCode.RETURN);
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.gill.jlox.vm;
+
+/**
+ * Instruction set of the bytecode VM.
+ * Operands follow the opcode in the code array; u8 is one byte, u16 is two (big-endian).
+ * Variables live in Environments (numbered by the Resolver), except the locals of a
+ * function none of whose locals can escape (see FunStmt.localsEscape): those sit in
+ * the call's stack slots, just above the callee, and *_STACK instructions reach them.
+ */
+public final class OpCode {
+    public static final byte CONSTANT = 0;          // u16 constant index
+    public static final byte NIL = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte POP = 4;
+
+    public static final byte GET_LOCAL = 5;         // u8 depth, u16 slot
+    public static final byte SET_LOCAL = 6;         // u8 depth, u16 slot (leaves the value on the stack)
+    public static final byte DEFINE_LOCAL = 7;      // u16 slot, u16 name constant (pops the value)
+    public static final byte GET_GLOBAL = 8;        // u16 GlobalRef constant
+    public static final byte SET_GLOBAL = 9;        // u16 GlobalRef constant
+    public static final byte DEFINE_NAME = 10;      // u16 name constant, defines in the current environment
+    public static final byte GET_DYNAMIC = 11;      // u16 name constant, walks the environment chain by name
+    public static final byte SET_DYNAMIC = 12;      // u16 name constant
+
+    public static final byte BINARY = 13;           // u16 operator token constant
+    public static final byte UNARY = 14;            // u16 operator token constant
+    public static final byte INCREMENT = 15;
+    public static final byte DECREMENT = 16;
+
+    public static final byte JUMP = 17;             // u16 forward offset
+    public static final byte JUMP_IF_FALSE = 18;    // u16 forward offset, does not pop the condition
+    public static final byte JUMP_IF_TRUE = 19;     // u16 forward offset, does not pop the condition
+
+    public static final byte PUSH_ENV = 21;         // u16 slot count
+    public static final byte POP_ENV = 22;
+
+    public static final byte CLOSURE = 23;          // u16 function constant
+    public static final byte CALL = 24;             // u8 argument count
+    public static final byte RETURN = 25;
+    public static final byte PRINT = 26;
+
+    // Dedicated operators, so the common cases skip the switch on the operator token.
+    public static final byte ADD = 27;
+    public static final byte SUBTRACT = 28;
+    public static final byte MULTIPLY = 29;
+    public static final byte DIVIDE = 30;
+    public static final byte MODULO = 31;
+    public static final byte GREATER = 32;
+    public static final byte GREATER_EQUAL = 33;
+    public static final byte LESS = 34;
+    public static final byte LESS_EQUAL = 35;
+    public static final byte EQUAL = 36;
+    public static final byte NOT_EQUAL = 37;
+    public static final byte NEGATE = 38;
+    public static final byte NOT = 39;
+
+    public static final byte GET_STACK = 40;        // u16 local index in the current frame
+    public static final byte SET_STACK = 41;        // u16 local index (leaves the value on the stack)
+    public static final byte DEFINE_STACK = 42;     // u16 local index (pops the value)
+
+    // Fused forms of what statements and conditions compile to most, one dispatch instead of two or three.
+    public static final byte STORE_LOCAL = 43;      // u8 depth, u16 slot (pops the value)
+    public static final byte STORE_GLOBAL = 44;     // u16 GlobalRef constant (pops the value)
+    public static final byte POP_JUMP_IF_FALSE = 45; // s16 offset, pops the condition
+
+    // Jumps which end with a signed 16-bit offset. Forward, they are taken unless the condition
+    // holds (an if, or a loop's first test); backward, only if it does (the test at the bottom
+    // of a loop). POP_JUMP_IF_FALSE tests the truthiness of the value it pops. The plain
+    // ones pop both operands; *_CONSTANT ones have a u16 number constant for the right operand
+    // and pop the left one. *_STACK_CONSTANT and *_GLOBAL_CONSTANT ones read the left operand
+    // first, from a u16 local index (as GET_STACK) or GlobalRef constant (as GET_GLOBAL), and
+    // pop nothing.
+    public static final byte JUMP_IF_NOT_LESS = 46;
+    public static final byte JUMP_IF_NOT_LESS_EQUAL = 47;
+    public static final byte JUMP_IF_NOT_GREATER = 48;
+    public static final byte JUMP_IF_NOT_GREATER_EQUAL = 49;
+    public static final byte JUMP_IF_NOT_LESS_CONSTANT = 50;
+    public static final byte JUMP_IF_NOT_LESS_EQUAL_CONSTANT = 51;
+    public static final byte JUMP_IF_NOT_GREATER_CONSTANT = 52;
+    public static final byte JUMP_IF_NOT_GREATER_EQUAL_CONSTANT = 53;
+    public static final byte JUMP_IF_NOT_LESS_STACK_CONSTANT = 54;
+    public static final byte JUMP_IF_NOT_LESS_EQUAL_STACK_CONSTANT = 55;
+    public static final byte JUMP_IF_NOT_GREATER_STACK_CONSTANT = 56;
+    public static final byte JUMP_IF_NOT_GREATER_EQUAL_STACK_CONSTANT = 57;
+    public static final byte JUMP_IF_NOT_LESS_GLOBAL_CONSTANT = 63;
+    public static final byte JUMP_IF_NOT_LESS_EQUAL_GLOBAL_CONSTANT = 64;
+    public static final byte JUMP_IF_NOT_GREATER_GLOBAL_CONSTANT = 65;
+    public static final byte JUMP_IF_NOT_GREATER_EQUAL_GLOBAL_CONSTANT = 66;
+
+    // Arithmetic on a number constant, a u16 constant index for the right operand: `n - 1`, `i * 2`.
+    public static final byte ADD_CONSTANT = 58;
+    public static final byte SUBTRACT_CONSTANT = 59;
+    public static final byte MULTIPLY_CONSTANT = 60;
+    // u16 local index or GlobalRef constant, u16 number constant: push the variable plus or
+    // minus the constant.
+    public static final byte ADD_STACK_CONSTANT = 61;
+    public static final byte SUBTRACT_STACK_CONSTANT = 62;
+    public static final byte ADD_GLOBAL_CONSTANT = 67;
+    public static final byte SUBTRACT_GLOBAL_CONSTANT = 68;
+    // The same operands: `i = i + 1` as a statement, which adds the constant to the variable
+    // in place and pushes nothing.
+    public static final byte ADD_TO_STACK = 69;
+    public static final byte ADD_TO_GLOBAL = 70;
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,664 @@
+package com.gill.jlox.vm;
+
+import com.gill.jlox.ast.statements.BaseStmt;
+import com.gill.jlox.operations.BuiltIns;
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.LoxCallable;
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.GlobalRef;
+import com.gill.jlox.runtime.Operators;
+import com.gill.jlox.runtime.RuntimeError;
+import com.gill.jlox.tokens.Token;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stack-based virtual machine for the bytecode produced by the Compiler.
+ *
+ * Lox calls don't recurse on the Java stack: a CALL pushes a Frame and the
+ * dispatch loop carries on with the callee's code, a RETURN pops it again.
+ * There are no exceptions involved in returning from a function either.
+ *
+ * The frame and value stacks are plain arrays on the heap, which start small and
+ * double when a call needs more room. So recursion can go as deep as maxFrames
+ * (--max-depth) allows, and only a program that goes deeper gets "Stack overflow.".
+ *
+ * A call gets an Environment for its locals only if something other than its own code
+ * can get at them (a closure, env()). Otherwise they stay in the call's stack slots,
+ * where its arguments already are, and the callee runs in the closure's environment.
+ */
+public class VM {
+
+    // Call depth allowed when Lox isn't given --max-depth. A frame with its Environment
+    // and stack slots takes around 200 bytes, so this is a budget of ~200MB of heap.
+    public static final int DEFAULT_MAX_FRAMES = 1_000_000;
+    private static final int INITIAL_FRAMES = 64;
+    private static final int INITIAL_STACK = 4096;
+
+    private static class Frame {
+        byte[] code;
+        Object[] constants;
+        int ip;
+        // Stack index of the callee; arguments and temporaries live above it.
+        int base;
+        // The caller's environment, restored on RETURN.
+        Environment callerEnv;
+    }
+
+    public final Environment globalEnv = new Environment();
+    private Environment env = globalEnv;
+
+    private final int maxFrames;
+    private Object[] stack = new Object[INITIAL_STACK];
+    private Frame[] frames = new Frame[INITIAL_FRAMES];
+    private int frameCount = 0;
+
+    public VM() {
+        this(DEFAULT_MAX_FRAMES);
+    }
+
+    public VM(int maxFrames) {
+        this.maxFrames = maxFrames;
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame();
+        }
+        globalEnv.define("clock", new BuiltIns.Clock());
+        globalEnv.define("env", new ScopeEnv());
+        globalEnv.define("println", new BuiltIns.RawPrint());
+    }
+
+    /**
+     * VM flavour of BuiltIns.ScopeEnv: the current environment belongs to the VM, not an Evaluator.
+     */
+    private class ScopeEnv implements LoxCallable {
+        @Override
+        public Object call(Evaluator evaluator, List<Object> args) {
+            return env;
+        }
+
+        @Override
+        public int arity() {
+            return 0;
+        }
+
+        @Override
+        public boolean isVariadic() {
+            return false;
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+
+    public Object interpret(List<BaseStmt> statements) throws RuntimeError {
+        return run(new Compiler().compile(statements));
+    }
+
+    /**
+     * Runs each top-level script in turn. Like Evaluator.evaluate(List), a runtime error
+     * is reported and execution carries on with the next top-level statement.
+     */
+    public Object run(List<VmFunction> scripts) {
+        Object lastResult = null;
+        for (VmFunction script : scripts) {
+            try {
+                lastResult = execute(script);
+            } catch (RuntimeError runtimeError) {
+                System.err.println(runtimeError.getMessage());
+                frameCount = 0;
+                env = globalEnv;
+            }
+        }
+        return lastResult;
+    }
+
+    private Object execute(VmFunction script) throws RuntimeError {
+        Frame frame = pushFrame(script, 0);
+        // A local copy for the dispatch loop; only pushFrame replaces the array, when it grows.
+        Object[] stack = this.stack;
+        stack[0] = new VmClosure(script, globalEnv);
+        // Kept in a local rather than a field, so pushes and pops needn't go to memory.
+        int sp = 1;
+        byte[] code = frame.code;
+        Object[] constants = frame.constants;
+        int ip = 0;
+        // Stack index of the frame's first local.
+        int fp = frame.base + 1;
+
+        for (;;) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.CONSTANT -> {
+                    stack[sp++] = constants[readShort(code, ip)];
+                    ip += 2;
+                }
+                case OpCode.NIL -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = Boolean.TRUE;
+                case OpCode.FALSE -> stack[sp++] = Boolean.FALSE;
+                case OpCode.POP -> sp--;
+                case OpCode.GET_LOCAL -> {
+                    int depth = code[ip] & 0xff;
+                    int slot = readShort(code, ip + 1);
+                    ip += 3;
+                    stack[sp++] = env.getAt(depth, slot);
+                }
+                case OpCode.SET_LOCAL -> {
+                    int depth = code[ip] & 0xff;
+                    int slot = readShort(code, ip + 1);
+                    ip += 3;
+                    env.assignAt(depth, slot, stack[sp - 1]);
+                }
+                case OpCode.STORE_LOCAL -> {
+                    int depth = code[ip] & 0xff;
+                    int slot = readShort(code, ip + 1);
+                    ip += 3;
+                    env.assignAt(depth, slot, stack[--sp]);
+                }
+                case OpCode.DEFINE_LOCAL -> {
+                    int slot = readShort(code, ip);
+                    String name = (String) constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    env.defineAt(slot, name, stack[--sp]);
+                }
+                case OpCode.GET_STACK -> {
+                    stack[sp++] = stack[fp + readShort(code, ip)];
+                    ip += 2;
+                }
+                case OpCode.SET_STACK -> {
+                    stack[fp + readShort(code, ip)] = stack[sp - 1];
+                    ip += 2;
+                }
+                case OpCode.DEFINE_STACK -> {
+                    stack[fp + readShort(code, ip)] = stack[--sp];
+                    ip += 2;
+                }
+                case OpCode.GET_GLOBAL -> {
+                    stack[sp++] = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    ip += 2;
+                }
+                case OpCode.SET_GLOBAL -> {
+                    ((GlobalRef) constants[readShort(code, ip)]).set(globalEnv, stack[sp - 1]);
+                    ip += 2;
+                }
+                case OpCode.STORE_GLOBAL -> {
+                    ((GlobalRef) constants[readShort(code, ip)]).set(globalEnv, stack[--sp]);
+                    ip += 2;
+                }
+                case OpCode.DEFINE_NAME -> {
+                    env.define(((Token) constants[readShort(code, ip)]).lexeme, stack[--sp]);
+                    ip += 2;
+                }
+                case OpCode.GET_DYNAMIC -> {
+                    stack[sp++] = env.getEnvByToken((Token) constants[readShort(code, ip)]);
+                    ip += 2;
+                }
+                case OpCode.SET_DYNAMIC -> {
+                    env.assign((Token) constants[readShort(code, ip)], stack[sp - 1]);
+                    ip += 2;
+                }
+                case OpCode.BINARY -> {
+                    Token operator = (Token) constants[readShort(code, ip)];
+                    ip += 2;
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Operators.binary(operator, stack[sp - 1], right);
+                }
+                case OpCode.UNARY -> {
+                    Token operator = (Token) constants[readShort(code, ip)];
+                    ip += 2;
+                    stack[sp - 1] = Operators.unary(operator, stack[sp - 1]);
+                }
+                case OpCode.ADD -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a + b;
+                    } else {
+                        stack[sp - 1] = Operators.add(left, right);
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a - b;
+                    } else {
+                        stack[sp - 1] = Operators.subtract(left, right);
+                    }
+                }
+                case OpCode.MULTIPLY -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a * b;
+                    } else {
+                        stack[sp - 1] = Operators.multiply(left, right);
+                    }
+                }
+                case OpCode.DIVIDE -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Operators.divide(stack[sp - 1], right);
+                }
+                case OpCode.MODULO -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Operators.modulo(stack[sp - 1], right);
+                }
+                case OpCode.GREATER -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a > b;
+                    } else {
+                        stack[sp - 1] = Operators.greater(left, right);
+                    }
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a >= b;
+                    } else {
+                        stack[sp - 1] = Operators.greaterEqual(left, right);
+                    }
+                }
+                case OpCode.LESS -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a < b;
+                    } else {
+                        stack[sp - 1] = Operators.less(left, right);
+                    }
+                }
+                case OpCode.LESS_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a <= b;
+                    } else {
+                        stack[sp - 1] = Operators.lessEqual(left, right);
+                    }
+                }
+                case OpCode.EQUAL -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Operators.isEqual(stack[sp - 1], right);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = !Operators.isEqual(stack[sp - 1], right);
+                }
+                case OpCode.NEGATE -> stack[sp - 1] = Operators.negate(stack[sp - 1]);
+                case OpCode.NOT -> stack[sp - 1] = !Operators.isTruthy(stack[sp - 1]);
+                case OpCode.INCREMENT -> stack[sp - 1] = Operators.increment(stack[sp - 1]);
+                case OpCode.DECREMENT -> stack[sp - 1] = Operators.decrement(stack[sp - 1]);
+                case OpCode.ADD_CONSTANT -> {
+                    Object left = stack[sp - 1];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    if (left instanceof Double a) {
+                        stack[sp - 1] = a + (Double) right;
+                    } else {
+                        stack[sp - 1] = Operators.add(left, right);
+                    }
+                }
+                case OpCode.SUBTRACT_CONSTANT -> {
+                    Object left = stack[sp - 1];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    if (left instanceof Double a) {
+                        stack[sp - 1] = a - (Double) right;
+                    } else {
+                        stack[sp - 1] = Operators.subtract(left, right);
+                    }
+                }
+                case OpCode.ADD_STACK_CONSTANT -> {
+                    Object left = stack[fp + readShort(code, ip)];
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    if (left instanceof Double a) {
+                        stack[sp++] = a + (Double) right;
+                    } else {
+                        stack[sp++] = Operators.add(left, right);
+                    }
+                }
+                case OpCode.ADD_GLOBAL_CONSTANT -> {
+                    Object left = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    if (left instanceof Double a) {
+                        stack[sp++] = a + (Double) right;
+                    } else {
+                        stack[sp++] = Operators.add(left, right);
+                    }
+                }
+                case OpCode.SUBTRACT_STACK_CONSTANT -> {
+                    Object left = stack[fp + readShort(code, ip)];
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    if (left instanceof Double a) {
+                        stack[sp++] = a - (Double) right;
+                    } else {
+                        stack[sp++] = Operators.subtract(left, right);
+                    }
+                }
+                case OpCode.SUBTRACT_GLOBAL_CONSTANT -> {
+                    Object left = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    if (left instanceof Double a) {
+                        stack[sp++] = a - (Double) right;
+                    } else {
+                        stack[sp++] = Operators.subtract(left, right);
+                    }
+                }
+                case OpCode.ADD_TO_STACK -> {
+                    int local = fp + readShort(code, ip);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    if (stack[local] instanceof Double a) {
+                        stack[local] = a + (Double) right;
+                    } else {
+                        stack[local] = Operators.add(stack[local], right);
+                    }
+                }
+                case OpCode.ADD_TO_GLOBAL -> {
+                    GlobalRef global = (GlobalRef) constants[readShort(code, ip)];
+                    Object left = global.get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    if (left instanceof Double a) {
+                        global.set(globalEnv, a + (Double) right);
+                    } else {
+                        global.set(globalEnv, Operators.add(left, right));
+                    }
+                }
+                case OpCode.MULTIPLY_CONSTANT -> {
+                    Object left = stack[sp - 1];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    if (left instanceof Double a) {
+                        stack[sp - 1] = a * (Double) right;
+                    } else {
+                        stack[sp - 1] = Operators.multiply(left, right);
+                    }
+                }
+                case OpCode.JUMP -> ip += readShort(code, ip) + 2;
+                case OpCode.POP_JUMP_IF_FALSE -> ip = branch(code, ip, Operators.isTruthy(stack[--sp]));
+                case OpCode.JUMP_IF_NOT_LESS -> {
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    boolean holds = left instanceof Double a && right instanceof Double b
+                            ? a < b : (Boolean) Operators.less(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    boolean holds = left instanceof Double a && right instanceof Double b
+                            ? a <= b : (Boolean) Operators.lessEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER -> {
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    boolean holds = left instanceof Double a && right instanceof Double b
+                            ? a > b : (Boolean) Operators.greater(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    boolean holds = left instanceof Double a && right instanceof Double b
+                            ? a >= b : (Boolean) Operators.greaterEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (!Operators.isTruthy(stack[sp - 1])) {
+                        ip += readShort(code, ip);
+                    }
+                    ip += 2;
+                }
+                case OpCode.JUMP_IF_TRUE -> {
+                    if (Operators.isTruthy(stack[sp - 1])) {
+                        ip += readShort(code, ip);
+                    }
+                    ip += 2;
+                }
+                case OpCode.JUMP_IF_NOT_LESS_CONSTANT -> {
+                    Object left = stack[--sp];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    boolean holds = left instanceof Double a
+                            ? a < (Double) right : (Boolean) Operators.less(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_LESS_STACK_CONSTANT -> {
+                    Object left = stack[fp + readShort(code, ip)];
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a < (Double) right : (Boolean) Operators.less(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_LESS_GLOBAL_CONSTANT -> {
+                    Object left = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a < (Double) right : (Boolean) Operators.less(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL_CONSTANT -> {
+                    Object left = stack[--sp];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    boolean holds = left instanceof Double a
+                            ? a <= (Double) right : (Boolean) Operators.lessEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL_STACK_CONSTANT -> {
+                    Object left = stack[fp + readShort(code, ip)];
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a <= (Double) right : (Boolean) Operators.lessEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL_GLOBAL_CONSTANT -> {
+                    Object left = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a <= (Double) right : (Boolean) Operators.lessEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_CONSTANT -> {
+                    Object left = stack[--sp];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    boolean holds = left instanceof Double a
+                            ? a > (Double) right : (Boolean) Operators.greater(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_STACK_CONSTANT -> {
+                    Object left = stack[fp + readShort(code, ip)];
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a > (Double) right : (Boolean) Operators.greater(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_GLOBAL_CONSTANT -> {
+                    Object left = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a > (Double) right : (Boolean) Operators.greater(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL_CONSTANT -> {
+                    Object left = stack[--sp];
+                    Object right = constants[readShort(code, ip)];
+                    ip += 2;
+                    boolean holds = left instanceof Double a
+                            ? a >= (Double) right : (Boolean) Operators.greaterEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL_STACK_CONSTANT -> {
+                    Object left = stack[fp + readShort(code, ip)];
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a >= (Double) right : (Boolean) Operators.greaterEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL_GLOBAL_CONSTANT -> {
+                    Object left = ((GlobalRef) constants[readShort(code, ip)]).get(globalEnv);
+                    Object right = constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    boolean holds = left instanceof Double a
+                            ? a >= (Double) right : (Boolean) Operators.greaterEqual(left, right);
+                    ip = branch(code, ip, holds);
+                }
+                case OpCode.PUSH_ENV -> {
+                    env = new Environment(env, readShort(code, ip));
+                    ip += 2;
+                }
+                case OpCode.POP_ENV -> env = env.getEnclosing();
+                case OpCode.CLOSURE -> {
+                    stack[sp++] = new VmClosure((VmFunction) constants[readShort(code, ip)], env);
+                    ip += 2;
+                }
+                case OpCode.CALL -> {
+                    int argCount = code[ip++] & 0xff;
+                    Object callee = stack[sp - 1 - argCount];
+                    if (callee instanceof VmClosure closure) {
+                        VmFunction function = closure.function;
+                        if (argCount != function.arity()) {
+                            throw new RuntimeError("Expected " + function.arity() + " arguments but got " + argCount);
+                        }
+                        if (function.deferred != null) {
+                            Compiler.compileDeferred(function);
+                        }
+                        frame.ip = ip;
+                        int base = sp - 1 - argCount;
+                        if (function.stackLocals) {
+                            frame = pushFrame(function, base);
+                            stack = this.stack;
+                            // The arguments are the first locals already; the rest start out as nil.
+                            int locals = base + 1 + function.localCount;
+                            while (sp < locals) {
+                                stack[sp++] = null;
+                            }
+                            env = closure.closure;
+                        } else {
+                            Environment callEnv = new Environment(closure.closure, function.slotCount);
+                            for (int i = 0; i < argCount; i++) {
+                                callEnv.defineAt(i, function.parameters[i], stack[sp - argCount + i]);
+                            }
+                            frame = pushFrame(function, base);
+                            stack = this.stack;
+                            env = callEnv;
+                        }
+                        fp = base + 1;
+                        code = frame.code;
+                        constants = frame.constants;
+                        ip = 0;
+                    } else if (callee instanceof LoxCallable callable) {
+                        if (!callable.isVariadic() && argCount != callable.arity()) {
+                            throw new RuntimeError("Expected " + callable.arity() + " arguments but got " + argCount);
+                        }
+                        Object result = callNative(callable, argCount, sp);
+                        sp -= argCount + 1;
+                        stack[sp++] = result;
+                    } else {
+                        throw new RuntimeError("Can only call functions and classes");
+                    }
+                }
+                case OpCode.RETURN -> {
+                    Object result = stack[--sp];
+                    frameCount--;
+                    env = frame.callerEnv;
+                    sp = frame.base;
+                    if (frameCount == 0) {
+                        return result;
+                    }
+                    stack[sp++] = result;
+                    frame = frames[frameCount - 1];
+                    code = frame.code;
+                    constants = frame.constants;
+                    ip = frame.ip;
+                    fp = frame.base + 1;
+                }
+                case OpCode.PRINT -> System.out.println(stack[--sp]);
+                default -> throw new RuntimeError("VM: unknown opcode " + instruction);
+            }
+        }
+    }
+
+    /**
+     * Calls a native with the argCount stack values below sp, through the fixed-arity entry points.
+     */
+    private Object callNative(LoxCallable callable, int argCount, int sp) throws RuntimeError {
+        return switch (argCount) {
+            case 0 -> callable.call0(null);
+            case 1 -> callable.call1(null, stack[sp - 1]);
+            case 2 -> callable.call2(null, stack[sp - 2], stack[sp - 1]);
+            case 3 -> callable.call3(null, stack[sp - 3], stack[sp - 2], stack[sp - 1]);
+            default -> callable.callN(null, Arrays.copyOfRange(stack, sp - argCount, sp));
+        };
+    }
+
+    private Frame pushFrame(VmFunction function, int base) throws RuntimeError {
+        if (frameCount >= maxFrames) {
+            throw new RuntimeError("Stack overflow.");
+        }
+        // The callee, its arguments or locals, and the most temporaries its code ever pushes.
+        long top = (long) base + 1 + function.frameSize;
+        if (frameCount == frames.length || top > stack.length) {
+            grow(top);
+        }
+        Frame frame = frames[frameCount++];
+        frame.code = function.chunk.code;
+        frame.constants = function.chunk.constants;
+        frame.ip = 0;
+        frame.base = base;
+        frame.callerEnv = env;
+        return frame;
+    }
+
+    /**
+     * Makes room for one more frame, using the value stack up to top (exclusive), by
+     * doubling whichever stack is full.
+     */
+    private void grow(long top) throws RuntimeError {
+        if (frameCount == frames.length) {
+            int size = (int) Math.min(2L * frames.length, maxFrames);
+            Frame[] grown = Arrays.copyOf(frames, size);
+            for (int i = frames.length; i < size; i++) {
+                grown[i] = new Frame();
+            }
+            frames = grown;
+        }
+        if (top > stack.length) {
+            long size = Math.max(2L * stack.length, top);
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new RuntimeError("Stack overflow.");
+            }
+            stack = Arrays.copyOf(stack, (int) size);
+        }
+    }
+
+    /**
+     * Where a conditional jump whose offset is at ip goes: forward if the condition doesn't
+     * hold, back if it does (see OpCode), and otherwise on to the next instruction.
+     */
+    private static int branch(byte[] code, int ip, boolean holds) {
+        int offset = (short) readShort(code, ip);
+        return holds == offset < 0 ? ip + 2 + offset : ip + 2;
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+}
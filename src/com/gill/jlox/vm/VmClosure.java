@@ -0,0 +1,42 @@
+package com.gill.jlox.vm;
+
+import com.gill.jlox.operations.Evaluator;
+import com.gill.jlox.operations.LoxCallable;
+import com.gill.jlox.runtime.Environment;
+import com.gill.jlox.runtime.RuntimeError;
+
+import java.util.List;
+
+/**
+ * Runtime representation of a function inside the VM.
+ * Calls are dispatched by the VM itself (pushing a frame), never through call().
+ */
+public class VmClosure implements LoxCallable {
+    final VmFunction function;
+    final Environment closure;
+
+    VmClosure(VmFunction function, Environment closure) {
+        this.function = function;
+        this.closure = closure;
+    }
+
+    @Override
+    public Object call(Evaluator evaluator, List<Object> args) throws RuntimeError {
+        throw new RuntimeError("Can't call a VM function from the tree-walking Evaluator");
+    }
+
+    @Override
+    public int arity() {
+        return function.arity();
+    }
+
+    @Override
+    public boolean isVariadic() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
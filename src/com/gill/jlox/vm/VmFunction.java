@@ -0,0 +1,49 @@
+package com.gill.jlox.vm;
+
+import com.gill.jlox.ast.statements.FunStmt;
+
+/**
+ * Compiled function prototype: the bytecode for its body plus what a call frame needs.
+ * The runtime value is a VmClosure, which pairs this with the Environment it closes over.
+ *
+ * With --lazy-parse a function's body may not even be parsed yet when its declaration is
+ * compiled. Then deferred holds the declaration, and the VM has the Compiler fill in the
+ * chunk on the first call (see Compiler.compileDeferred).
+ */
+public class VmFunction {
+    final String name;
+    final String[] parameters;
+    // Set with the body, so not known yet while the function is deferred.
+    int slotCount;
+    final Chunk chunk = new Chunk();
+    // Whether a call keeps the locals in its stack slots instead of an Environment (see
+    // FunStmt.localsEscape), and how many slots they take: parameters first, then the
+    // body's variables, nested blocks after those of the blocks around them.
+    boolean stackLocals;
+    int localCount;
+    // Stack slots a call needs above the callee: its arguments or locals, plus the most
+    // temporaries its code pushes (see Chunk.maxStackDepth).
+    int frameSize;
+    // The declaration whose body is still to be parsed and compiled; null once it has been.
+    FunStmt deferred;
+
+    VmFunction(String name, String[] parameters, int slotCount) {
+        this.name = name;
+        this.parameters = parameters;
+        this.slotCount = slotCount;
+    }
+
+    VmFunction(String name, String[] parameters, FunStmt deferred) {
+        this(name, parameters, -1);
+        this.deferred = deferred;
+    }
+
+    int arity() {
+        return parameters.length;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn:" + name + ">";
+    }
+}